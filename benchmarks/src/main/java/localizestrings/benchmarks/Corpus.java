@@ -0,0 +1,42 @@
+package localizestrings.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * generated corpus in a temp directory
+ */
+class Corpus {
+
+    final File dir;
+    final File androidRoot;
+    final File iosRoot;
+
+    Corpus(CorpusGenerator generator) throws IOException {
+        dir = Files.createTempDirectory("localize-bench").toFile();
+        androidRoot = new File(dir, "android");
+        iosRoot = new File(dir, "ios");
+        generator.generate(dir);
+    }
+
+    void delete() throws IOException {
+        Files.walkFileTree(dir.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
@@ -0,0 +1,196 @@
+package localizestrings.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * generates a synthetic Android project (res/values-XX/strings.xml) and iOS source tree (Classes/*.m) to run
+ * LocalizeStrings against.
+ * <p>
+ * usage: CorpusGenerator <dir> [strings] [languages] [files] [lines per file] [strings per line]
+ */
+public class CorpusGenerator {
+
+    private static final String[] WORDS = { "ok", "cancel", "network", "error", "welcome", "nearby", "save", "delete", "retry", "settings", "profile",
+        "home", "search", "share", "account", "password", "sign", "in", "out", "loading", "please", "wait", "try", "again", "later", "your", "offers" };
+
+    private static final String[] LANGUAGES = { "es", "fr", "de", "it", "ja", "ko", "pt", "ru", "nl", "sv", "zh-rCN", "zh-rTW" };
+
+    // # of English strings
+    int numStrings = 1000;
+
+    // # of translations (not counting English)
+    int numLanguages = 10;
+
+    // fraction of strings each translation has
+    double translatedRate = 0.9;
+
+    // # of iOS .m files
+    int numFiles = 100;
+
+    int linesPerFile = 200;
+
+    // iOS strings on each line that has strings
+    int stringsPerLine = 2;
+
+    // fraction of iOS strings which match an English string
+    double matchRate = 0.5;
+
+    long seed = 1;
+
+    private List<String> mValueList;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("usage: CorpusGenerator <dir> [strings] [languages] [files] [lines per file] [strings per line]");
+            System.exit(0);
+        }
+        CorpusGenerator generator = new CorpusGenerator();
+        if (args.length > 1) {
+            generator.numStrings = Integer.parseInt(args[1]);
+        }
+        if (args.length > 2) {
+            generator.numLanguages = Integer.parseInt(args[2]);
+        }
+        if (args.length > 3) {
+            generator.numFiles = Integer.parseInt(args[3]);
+        }
+        if (args.length > 4) {
+            generator.linesPerFile = Integer.parseInt(args[4]);
+        }
+        if (args.length > 5) {
+            generator.stringsPerLine = Integer.parseInt(args[5]);
+        }
+        File dir = new File(args[0]);
+        generator.generate(dir);
+        System.out.println("created: " + new File(dir, "android") + " " + new File(dir, "ios"));
+    }
+
+    /**
+     * create dir/android and dir/ios
+     */
+    void generate(File dir) throws IOException {
+        Random random = new Random(seed);
+        generateAndroid(new File(dir, "android"), random);
+        generateIos(new File(dir, "ios"), random);
+    }
+
+    private void generateAndroid(File androidRoot, Random random) throws IOException {
+        File resDir = new File(androidRoot, "res");
+        mkdirs(resDir);
+        write(new File(androidRoot, "AndroidManifest.xml"), "<manifest package=\"com.example\" />\n");
+
+        // English values are unique so each one maps to a single key
+        mValueList = new ArrayList<String>();
+        for (int i = 0; i < numStrings; i++) {
+            StringBuilder sb = new StringBuilder(randomWords(random, 1 + random.nextInt(5)));
+            if (i % 10 == 0) {
+                sb.append(" %s");
+            } else if (i % 15 == 0) {
+                sb.append(": %1$d");
+            }
+            sb.append(' ').append(i);
+            sb.setCharAt(0, Character.toUpperCase(sb.charAt(0)));
+            mValueList.add(sb.toString());
+        }
+
+        writeStrings(new File(resDir, "values"), null, random);
+        for (int i = 0; i < numLanguages; i++) {
+            String langCode = i < LANGUAGES.length ? LANGUAGES[i] : "l" + i;
+            writeStrings(new File(resDir, "values-" + langCode), langCode, random);
+        }
+    }
+
+    private void writeStrings(File dir, String langCode, Random random) throws IOException {
+        mkdirs(dir);
+        Writer writer = open(new File(dir, "strings.xml"));
+        try {
+            writer.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<resources>\n");
+            for (int i = 0; i < mValueList.size(); i++) {
+                if (langCode != null && random.nextDouble() > translatedRate) {
+                    continue;
+                }
+                String value = mValueList.get(i);
+                if (langCode != null) {
+                    value = "[" + langCode + "] " + value;
+                }
+                writer.write("    <string name=\"text_" + i + "\">" + value + "</string>\n");
+            }
+            writer.write("</resources>\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void generateIos(File iosRoot, Random random) throws IOException {
+        mkdirs(new File(iosRoot, "resources"));
+        File classesDir = new File(iosRoot, "Classes");
+        mkdirs(classesDir);
+        for (int i = 0; i < numFiles; i++) {
+            Writer writer = open(new File(classesDir, "File" + i + ".m"));
+            try {
+                writer.write("#import \"File" + i + ".h\"\n\n@implementation File" + i + "\n\n- (void)setup {\n");
+                for (int line = 0; line < linesPerFile; line++) {
+                    if (line % 3 != 0) {
+                        // code without strings
+                        writer.write("    [self.view setNeedsLayout:" + line + "];\n");
+                        continue;
+                    }
+                    writer.write("    [self show");
+                    for (int j = 0; j < stringsPerLine; j++) {
+                        writer.write(j == 0 ? ":" : " with:");
+                        writer.write("@\"");
+                        if (random.nextDouble() < matchRate) {
+                            writer.write(mValueList.get(random.nextInt(mValueList.size())));
+                        } else {
+                            writer.write(randomWords(random, 1 + random.nextInt(4)));
+                        }
+                        writer.write('"');
+                    }
+                    writer.write("];\n");
+                }
+                writer.write("}\n\n@end\n");
+            } finally {
+                writer.close();
+            }
+        }
+    }
+
+    private static String randomWords(Random random, int numWords) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < numWords; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sb.toString();
+    }
+
+    private static void mkdirs(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("unable to create: " + dir);
+        }
+    }
+
+    private static Writer open(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+    }
+
+    private static void write(File file, String text) throws IOException {
+        Writer writer = open(file);
+        try {
+            writer.write(text);
+        } finally {
+            writer.close();
+        }
+    }
+}
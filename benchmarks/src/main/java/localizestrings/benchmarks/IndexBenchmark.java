@@ -0,0 +1,88 @@
+package localizestrings.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * indexing phase: parsing strings.xml and looking up iOS strings in the English index
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IndexBenchmark {
+
+    @Param({ "1000", "10000" })
+    public int strings;
+
+    // fraction of lookups which find a key
+    @Param({ "0.5" })
+    public double matchRate;
+
+    private Corpus mCorpus;
+    // LocalizeStrings object
+    private Object mLocalizer;
+    private File mEnglishFile;
+    // iOS string values to look up (searchFileForUse() looks up a range of the file's chars)
+    private char[][] mLookupArr;
+
+    @Setup
+    public void setup() throws Throwable {
+        CorpusGenerator generator = new CorpusGenerator();
+        generator.numStrings = strings;
+        generator.numLanguages = 0;
+        generator.numFiles = 0;
+        mCorpus = new Corpus(generator);
+        mEnglishFile = new File(mCorpus.androidRoot, "res/values/strings.xml");
+        mLocalizer = LocalizeStringsAccess.index(mCorpus.androidRoot, mCorpus.iosRoot);
+
+        // English values plus strings which won't be found
+        List<char[]> lookupList = new ArrayList<char[]>();
+        for (String value : LocalizeStringsAccess.getLangMap(mLocalizer).get("en").values()) {
+            lookupList.add((Math.random() < matchRate ? value : value + " (no match)").toCharArray());
+        }
+        mLookupArr = lookupList.toArray(new char[lookupList.size()][]);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        mCorpus.delete();
+    }
+
+    @Benchmark
+    public Map<String, String> readFileContents() throws Throwable {
+        Map<String, String> stringMap = new HashMap<String, String>();
+        Map<String, Map<String, String>> pluralMap = new HashMap<String, Map<String, String>>();
+        LocalizeStringsAccess.READ_FILE_CONTENTS.invoke(mLocalizer, mEnglishFile, stringMap, pluralMap, new HashSet<String>(), "en",
+            new ArrayList<String>());
+        return stringMap;
+    }
+
+    @Benchmark
+    public void findKeyForValue(Blackhole blackhole) throws Throwable {
+        for (char[] value : mLookupArr) {
+            blackhole.consume((String) LocalizeStringsAccess.FIND_KEY_FOR_VALUE.invoke(mLocalizer, value, 0, value.length));
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package localizestrings.benchmarks;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * LocalizeStrings is in the default package (so it can be run with plain javac/java) and JMH benchmarks can't be; its
+ * private methods are called through method handles instead. Handles are static final so the JIT can inline them;
+ * handles of instance methods take the LocalizeStrings object returned by index() as their first argument.
+ */
+final class LocalizeStringsAccess {
+
+    private static final Class<?> CLASS = loadClass("LocalizeStrings");
+
+    static final MethodHandle FIND_RES_DIRS = method("findResDirs", File.class, List.class);
+    static final MethodHandle FIND_STRINGS_FILES = method("findStringsFiles");
+    static final MethodHandle INDEX_STRINGS = method("indexStrings", List.class);
+    static final MethodHandle INDEX_VALUES = method("indexValues");
+    static final MethodHandle READ_FILE_CONTENTS = method("readFileContents", File.class, Map.class, Map.class, Set.class, String.class,
+        List.class);
+    static final MethodHandle FIND_KEY_FOR_VALUE = method("findKeyForValue", char[].class, int.class, int.class);
+    static final MethodHandle SEARCH_FILE_FOR_USE = method("searchFileForUse", File.class);
+    static final MethodHandle ADD_LOCALIZED_STRING_FOR_LANGUAGE = method("addLocalizedStringForLanguage", String.class, String.class, String.class,
+        boolean.class);
+    static final MethodHandle CONVERT_TO_IOS = method("convertToIos", String.class);
+    static final MethodHandle FIX_LOCALIZED_STRING = method("fixLocalizedString", String.class);
+
+    private LocalizeStringsAccess() {
+    }
+
+    /**
+     * create LocalizeStrings for androidRoot/iosRoot and index strings in its res directories
+     *
+     * @return LocalizeStrings object
+     */
+    static Object index(File androidRoot, File iosRoot) throws Throwable {
+        Constructor<?> constructor = CLASS.getDeclaredConstructor(List.class, File.class, PrintStream.class);
+        constructor.setAccessible(true);
+        List<?> resDirList = (List<?>) FIND_RES_DIRS.invoke(androidRoot, new ArrayList<String>());
+        Object localizer = constructor.newInstance(resDirList, iosRoot, System.out);
+        INDEX_STRINGS.invoke(localizer, (List<?>) FIND_STRINGS_FILES.invoke(localizer));
+        INDEX_VALUES.invoke(localizer);
+        return localizer;
+    }
+
+    /**
+     * @return copy of indexed strings: language code -> key -> value
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Map<String, String>> getLangMap(Object localizer) throws Exception {
+        Object stringTable = getField(localizer, "mStringTable");
+        int numKeys = (Integer) method(stringTable, "getNumKeys").invoke(stringTable);
+        Method getKey = method(stringTable, "getKey", int.class);
+        Method get = method(stringTable, "get", String.class, int.class);
+        Map<String, Map<String, String>> langMap = new TreeMap<String, Map<String, String>>();
+        for (String langCode : (Set<String>) method(stringTable, "getLanguages").invoke(stringTable)) {
+            Map<String, String> stringMap = new LinkedHashMap<String, String>();
+            for (int keyId = 0; keyId < numKeys; keyId++) {
+                String value = (String) get.invoke(stringTable, langCode, keyId);
+                if (value != null) {
+                    stringMap.put((String) getKey.invoke(stringTable, keyId), value);
+                }
+            }
+            langMap.put(langCode, stringMap);
+        }
+        return langMap;
+    }
+
+    // in-memory Localizable.strings files
+    @SuppressWarnings("unchecked")
+    static Map<String, ?> getLocalizedFileMap(Object localizer) throws Exception {
+        return (Map<String, ?>) getField(localizer, "mLocalizedFileMap");
+    }
+
+    private static Class<?> loadClass(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle method(String name, Class<?>... paramTypes) {
+        try {
+            Method method = CLASS.getDeclaredMethod(name, paramTypes);
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Object getField(Object localizer, String name) throws Exception {
+        Field field = CLASS.getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(localizer);
+    }
+
+    // package-private method of a LocalizeStrings helper class (setup only; not fast)
+    private static Method method(Object target, String name, Class<?>... paramTypes) throws Exception {
+        Method method = target.getClass().getDeclaredMethod(name, paramTypes);
+        method.setAccessible(true);
+        return method;
+    }
+}
@@ -0,0 +1,93 @@
+package localizestrings.benchmarks;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * matching phase: searching (and rewriting) iOS .m files. Files are restored before each invocation since
+ * searchFileForUse() replaces matched strings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+    @Param({ "5000" })
+    public int strings;
+
+    @Param({ "50" })
+    public int files;
+
+    @Param({ "300" })
+    public int linesPerFile;
+
+    @Param({ "1", "4" })
+    public int stringsPerLine;
+
+    // fraction of iOS strings which match an English string
+    @Param({ "0.0", "0.5" })
+    public double matchRate;
+
+    private Corpus mCorpus;
+    // LocalizeStrings object
+    private Object mLocalizer;
+    private File[] mFileArr;
+    private byte[][] mOriginalArr;
+
+    @Setup(Level.Trial)
+    public void setup() throws Throwable {
+        CorpusGenerator generator = new CorpusGenerator();
+        generator.numStrings = strings;
+        generator.numLanguages = 0;
+        generator.numFiles = files;
+        generator.linesPerFile = linesPerFile;
+        generator.stringsPerLine = stringsPerLine;
+        generator.matchRate = matchRate;
+        mCorpus = new Corpus(generator);
+        mLocalizer = LocalizeStringsAccess.index(mCorpus.androidRoot, mCorpus.iosRoot);
+
+        mFileArr = new File(mCorpus.iosRoot, "Classes").listFiles();
+        mOriginalArr = new byte[mFileArr.length][];
+        for (int i = 0; i < mFileArr.length; i++) {
+            mOriginalArr[i] = Files.readAllBytes(mFileArr[i].toPath());
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void restoreFiles() throws Exception {
+        for (int i = 0; i < mFileArr.length; i++) {
+            Files.write(mFileArr[i].toPath(), mOriginalArr[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        mCorpus.delete();
+    }
+
+    @Benchmark
+    public void searchFileForUse(Blackhole blackhole) throws Throwable {
+        for (File file : mFileArr) {
+            blackhole.consume(LocalizeStringsAccess.SEARCH_FILE_FOR_USE.invoke(mLocalizer, file));
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package localizestrings.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * writing phase: adding every key in every language to (in-memory) Localizable.strings files and converting values to
+ * iOS format (convertToIos; fixLocalizedString is the same with its cache)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteBenchmark {
+
+    @Param({ "1000", "5000" })
+    public int strings;
+
+    @Param({ "10" })
+    public int languages;
+
+    private Corpus mCorpus;
+    // LocalizeStrings object
+    private Object mLocalizer;
+
+    // language code, key, value
+    private String[][] mEntryArr;
+
+    @Setup(Level.Trial)
+    public void setup() throws Throwable {
+        CorpusGenerator generator = new CorpusGenerator();
+        generator.numStrings = strings;
+        generator.numLanguages = languages;
+        generator.numFiles = 0;
+        mCorpus = new Corpus(generator);
+        mLocalizer = LocalizeStringsAccess.index(mCorpus.androidRoot, mCorpus.iosRoot);
+
+        List<String[]> entryList = new ArrayList<String[]>();
+        for (Map.Entry<String, Map<String, String>> langEntry : LocalizeStringsAccess.getLangMap(mLocalizer).entrySet()) {
+            for (Map.Entry<String, String> entry : langEntry.getValue().entrySet()) {
+                entryList.add(new String[] { langEntry.getKey(), entry.getKey(), entry.getValue() });
+            }
+        }
+        mEntryArr = entryList.toArray(new String[entryList.size()][]);
+    }
+
+    @Setup(Level.Invocation)
+    public void clearLocalizedFiles() throws Exception {
+        LocalizeStringsAccess.getLocalizedFileMap(mLocalizer).clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        mCorpus.delete();
+    }
+
+    @Benchmark
+    public Object addLocalizedStringForLanguage() throws Throwable {
+        for (String[] entry : mEntryArr) {
+            LocalizeStringsAccess.ADD_LOCALIZED_STRING_FOR_LANGUAGE.invoke(mLocalizer, entry[0], entry[1], entry[2], true);
+        }
+        return LocalizeStringsAccess.getLocalizedFileMap(mLocalizer);
+    }
+
+    // Android -> iOS value conversion (uncached)
+    @Benchmark
+    public void convertToIos(Blackhole blackhole) throws Throwable {
+        for (String[] entry : mEntryArr) {
+            blackhole.consume((String) LocalizeStringsAccess.CONVERT_TO_IOS.invoke(entry[2]));
+        }
+    }
+
+    // converted values are cached for the whole run, so after the first invocation this only measures cache hits
+    @Benchmark
+    public void fixLocalizedString(Blackhole blackhole) throws Throwable {
+        for (String[] entry : mEntryArr) {
+            blackhole.consume((String) LocalizeStringsAccess.FIX_LOCALIZED_STRING.invoke(entry[2]));
+        }
+    }
+}
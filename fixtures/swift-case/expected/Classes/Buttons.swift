@@ -0,0 +1,16 @@
+enum Button: String {
+    case ok = "OK"
+    case cancel = "Cancel"
+}
+
+func title(for action: String) -> String {
+    switch action {
+    case "OK":
+        return NSLocalizedString("text_done", comment: "Done")
+    case "Cancel", "Done": return NSLocalizedString("text_ok", comment: "OK")
+    case "Item" where action.count > 2:
+        return NSLocalizedString("text_cancel", comment: "Cancel")
+    default:
+        return NSLocalizedString("text_item", comment: "Item")
+    }
+}
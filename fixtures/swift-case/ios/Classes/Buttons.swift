@@ -0,0 +1,16 @@
+enum Button: String {
+    case ok = "OK"
+    case cancel = "Cancel"
+}
+
+func title(for action: String) -> String {
+    switch action {
+    case "OK":
+        return "Done"
+    case "Cancel", "Done": return "OK"
+    case "Item" where action.count > 2:
+        return "Cancel"
+    default:
+        return "Item"
+    }
+}
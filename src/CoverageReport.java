@@ -0,0 +1,168 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * --report: localization coverage written as JSON or CSV while the run is going. The languages section is written once
+ * strings are indexed and each iOS file's strings are written as soon as that file's search results are added, so only
+ * records of the few files being searched ahead are held in memory. Strings marked translatable="false" aren't counted.
+ *
+ * <pre>
+ * {
+ *   "languages": {
+ *     "es": {"translated": 120, "missing": 2, "missingKeys": ["text_ok", "text_cancel"]}
+ *   },
+ *   "strings": [
+ *     {"type": "unmatched", "file": "Classes/A.m", "line": 12, "value": "Nearby"},
+ *     {"type": "notLocalized", "file": "Classes/B.m", "line": 3, "key": "text_male", "value": "Male"}
+ *   ]
+ * }
+ * </pre>
+ *
+ * CSV has 1 row per value with columns type,language,key,file,line,value: "translated" and "missing" rows have the
+ * count of a language in value, "missingKey" rows have a key and its English value.
+ */
+class CoverageReport {
+
+    // iOS string which doesn't match any English value
+    static final String UNMATCHED = "unmatched";
+    // iOS string which matches an English value but can't be localized (static/const)
+    static final String NOT_LOCALIZED = "notLocalized";
+
+    private final Writer mOut;
+    private final boolean mIsCsv;
+
+    // # of records written to the current JSON section (to know when a separator is needed)
+    private int mNumRecords;
+
+    CoverageReport(Writer out, boolean isCsv) throws IOException {
+        mOut = out;
+        mIsCsv = isCsv;
+        if (mIsCsv) {
+            mOut.write("type,language,key,file,line,value\n");
+        } else {
+            mOut.write("{\n  \"languages\": {");
+        }
+    }
+
+    /**
+     * write translated/missing counts of a language; call for each language before any strings are added
+     *
+     * @param missingKeyList keys which have an English value but aren't translated
+     * @param englishList    English value of each missing key
+     */
+    void addLanguage(String langCode, int numTranslated, List<String> missingKeyList, List<String> englishList) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        if (mIsCsv) {
+            appendRow(sb, "translated", langCode, null, null, -1, String.valueOf(numTranslated));
+            appendRow(sb, "missing", langCode, null, null, -1, String.valueOf(missingKeyList.size()));
+            for (int i = 0; i < missingKeyList.size(); i++) {
+                appendRow(sb, "missingKey", langCode, missingKeyList.get(i), null, -1, englishList.get(i));
+            }
+        } else {
+            sb.append(mNumRecords++ > 0 ? ",\n" : "\n");
+            sb.append("    ");
+            Metrics.appendString(sb, langCode);
+            sb.append(": {\"translated\": ").append(numTranslated).append(", \"missing\": ").append(missingKeyList.size());
+            sb.append(", \"missingKeys\": [");
+            for (int i = 0; i < missingKeyList.size(); i++) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                Metrics.appendString(sb, missingKeyList.get(i));
+            }
+            sb.append("]}");
+        }
+        mOut.write(sb.toString());
+    }
+
+    /**
+     * end languages section; call once before strings are added
+     */
+    void startStrings() throws IOException {
+        if (!mIsCsv) {
+            mOut.write((mNumRecords > 0 ? "\n  },\n" : "},\n") + "  \"strings\": [");
+            mNumRecords = 0;
+        }
+    }
+
+    /**
+     * format an iOS string record; doesn't write anything so it can be called from any thread
+     *
+     * @param type UNMATCHED or NOT_LOCALIZED
+     * @param key  Android key or null if there isn't one
+     */
+    String formatString(String type, String path, int line, String key, String value) {
+        StringBuilder sb = new StringBuilder();
+        if (mIsCsv) {
+            appendRow(sb, type, null, key, path, line, value);
+            return sb.toString();
+        }
+        sb.append("{\"type\": \"").append(type).append("\", \"file\": ");
+        Metrics.appendString(sb, path);
+        sb.append(", \"line\": ").append(line);
+        if (key != null) {
+            sb.append(", \"key\": ");
+            Metrics.appendString(sb, key);
+        }
+        sb.append(", \"value\": ");
+        Metrics.appendString(sb, value);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    /**
+     * write records created by formatString()
+     */
+    void addStrings(List<String> recordList) throws IOException {
+        for (String record : recordList) {
+            if (!mIsCsv) {
+                mOut.write(mNumRecords++ > 0 ? ",\n    " : "\n    ");
+            }
+            mOut.write(record);
+        }
+    }
+
+    /**
+     * finish report and close writer
+     */
+    void close() throws IOException {
+        if (!mIsCsv) {
+            mOut.write(mNumRecords > 0 ? "\n  ]\n}\n" : "]\n}\n");
+        }
+        mOut.close();
+    }
+
+    private static void appendRow(StringBuilder sb, String type, String langCode, String key, String path, int line, String value) {
+        sb.append(type).append(',');
+        appendCsv(sb, langCode);
+        sb.append(',');
+        appendCsv(sb, key);
+        sb.append(',');
+        appendCsv(sb, path);
+        sb.append(',');
+        if (line >= 0) {
+            sb.append(line);
+        }
+        sb.append(',');
+        appendCsv(sb, value);
+        sb.append('\n');
+    }
+
+    // quoted if it has a comma, quote or line break (RFC 4180); null is an empty field
+    private static void appendCsv(StringBuilder sb, String str) {
+        if (str == null) {
+            return;
+        }
+        boolean isQuoted = false;
+        for (int i = 0; i < str.length() && !isQuoted; i++) {
+            char c = str.charAt(i);
+            isQuoted = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!isQuoted) {
+            sb.append(str);
+            return;
+        }
+        sb.append('"').append(str.replace("\"", "\"\"")).append('"');
+    }
+}
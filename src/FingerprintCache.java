@@ -0,0 +1,235 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * file fingerprints (size, last modified, content hash) saved between runs so unchanged files can be skipped. Strings
+ * read from Android resource files aren't kept here; they're saved once in IndexSnapshot.
+ */
+class FingerprintCache {
+
+    private static final int VERSION = 3;
+
+    private static final String HASH_ALGORITHM = "MD5";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static class Fingerprint {
+        long size;
+        long lastModified;
+        String hash;
+    }
+
+    // fingerprints from the previous run
+    private final Map<String, Fingerprint> mOldMap = new ConcurrentHashMap<String, Fingerprint>();
+
+    // fingerprints of files seen during this run; only these are saved
+    private final Map<String, Fingerprint> mNewMap = new ConcurrentHashMap<String, Fingerprint>();
+
+    // hash of English value -> key index
+    private String mValuesHash = "";
+
+    // hash of all strings in all languages
+    private String mStringsHash = "";
+
+    private final File mFile;
+
+    FingerprintCache(File file) {
+        mFile = file;
+    }
+
+    File getFile() {
+        return mFile;
+    }
+
+    /**
+     * @return # of bytes read or -1 if there's no cache yet
+     */
+    long read() throws IOException {
+        if (!mFile.exists()) {
+            return -1;
+        }
+        FileChannel channel = FileChannel.open(mFile.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != VERSION) {
+                // old format; start over
+                return size;
+            }
+            mValuesHash = readString(buffer);
+            mStringsHash = readString(buffer);
+            int numFiles = buffer.getInt();
+            for (int i = 0; i < numFiles; i++) {
+                String path = readString(buffer);
+                Fingerprint fingerprint = new Fingerprint();
+                fingerprint.size = buffer.getLong();
+                fingerprint.lastModified = buffer.getLong();
+                fingerprint.hash = readString(buffer);
+                mOldMap.put(path, fingerprint);
+            }
+            return size;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            mOldMap.clear();
+            mValuesHash = "";
+            mStringsHash = "";
+            throw new IOException("cache is truncated or corrupt");
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * save fingerprints of files seen during this run; written to a temp file first so an interrupted write doesn't
+     * leave a partial cache
+     */
+    void write() throws IOException {
+        Path path = mFile.toPath();
+        Path tempPath = TextFile.createTempFile(path);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)));
+            try {
+                out.writeInt(VERSION);
+                writeString(out, mValuesHash);
+                writeString(out, mStringsHash);
+                out.writeInt(mNewMap.size());
+                for (Map.Entry<String, Fingerprint> entry : mNewMap.entrySet()) {
+                    Fingerprint fingerprint = entry.getValue();
+                    writeString(out, entry.getKey());
+                    out.writeLong(fingerprint.size);
+                    out.writeLong(fingerprint.lastModified);
+                    writeString(out, fingerprint.hash);
+                }
+            } finally {
+                out.close();
+            }
+            TextFile.replace(tempPath, path);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    // writeUTF() is limited to 64K so write length + UTF-8 bytes instead
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        byte[] bytes = str.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * check if file is the same as the last run and remember it for the next run. Size and last modified time are
+     * checked first; the file is only hashed if either one changed.
+     */
+    boolean isUnchanged(File file) throws IOException {
+        String path = file.getAbsolutePath();
+        Fingerprint oldFingerprint = mOldMap.get(path);
+        long size = file.length();
+        long lastModified = file.lastModified();
+        if (oldFingerprint != null && oldFingerprint.size == size && oldFingerprint.lastModified == lastModified) {
+            mNewMap.put(path, oldFingerprint);
+            return true;
+        }
+
+        Fingerprint fingerprint = new Fingerprint();
+        fingerprint.size = size;
+        fingerprint.lastModified = lastModified;
+        fingerprint.hash = hashFile(file);
+        if (oldFingerprint != null && oldFingerprint.hash.equals(fingerprint.hash)) {
+            // touched but not modified
+            mNewMap.put(path, fingerprint);
+            return true;
+        }
+        mNewMap.put(path, fingerprint);
+        return false;
+    }
+
+    /**
+     * update fingerprint after file was modified by this run
+     */
+    void update(File file) throws IOException {
+        Fingerprint fingerprint = new Fingerprint();
+        fingerprint.size = file.length();
+        fingerprint.lastModified = file.lastModified();
+        fingerprint.hash = hashFile(file);
+        mNewMap.put(file.getAbsolutePath(), fingerprint);
+    }
+
+    String getValuesHash() {
+        return mValuesHash;
+    }
+
+    void setValuesHash(String hash) {
+        mValuesHash = hash;
+    }
+
+    String getStringsHash() {
+        return mStringsHash;
+    }
+
+    void setStringsHash(String hash) {
+        mStringsHash = hash;
+    }
+
+    static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // every JVM is required to support MD5
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    // MD5 of file contents (hex)
+    static String hashFile(File file) throws IOException {
+        MessageDigest digest = createDigest();
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            byte[] buffer = new byte[64 * 1024];
+            while (true) {
+                int len = in.read(buffer);
+                if (len < 0) {
+                    break;
+                }
+                digest.update(buffer, 0, len);
+            }
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+        return toHex(digest.digest());
+    }
+}
@@ -0,0 +1,265 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * binary snapshot of the string index (keys, values for each language, plurals and the English value -> key lookup)
+ * saved with --incremental so the next run can load it with a single memory-mapped read instead of parsing every
+ * strings.xml file. The fingerprint (size, last modified time and MD5, as in FingerprintCache) of each strings.xml file
+ * it was built from is saved with it; the snapshot isn't used if any of them changed or files were added/removed. The
+ * hash is needed since an edit can keep size and time (same second, cp -p, rsync, checkouts).
+ */
+class IndexSnapshot {
+
+    private static final int VERSION = 4;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // strings.xml files the index was built from (in index order) and their size/last modified time/hash at that point
+    private final List<String> mPathList = new ArrayList<String>();
+    private final List<Long> mSizeList = new ArrayList<Long>();
+    private final List<Long> mLastModifiedList = new ArrayList<Long>();
+    private final List<String> mHashList = new ArrayList<String>();
+
+    // index contents
+    StringTable stringTable;
+    // language code -> key -> quantity -> value
+    Map<String, Map<String, Map<String, String>>> pluralMap;
+    // English value -> key
+    Map<String, String> valueKeyMap;
+    // messages printed while building value -> key lookup so they can be printed again
+    List<String> duplicateList;
+    String stringsHash;
+
+    /**
+     * records size, last modified time and hash of each file; call before files are read so a change made while
+     * they're being read isn't missed
+     */
+    IndexSnapshot(List<File> fileList) throws IOException {
+        for (File file : fileList) {
+            mPathList.add(file.getAbsolutePath());
+            mSizeList.add(file.length());
+            mLastModifiedList.add(file.lastModified());
+            mHashList.add(FingerprintCache.hashFile(file));
+        }
+    }
+
+    private IndexSnapshot() {
+    }
+
+    // same paths, sizes and last modified times; checked before files are hashed
+    private boolean isSameFiles(List<File> fileList) {
+        if (mPathList.size() != fileList.size()) {
+            return false;
+        }
+        for (int i = 0; i < fileList.size(); i++) {
+            File file = fileList.get(i);
+            if (!mPathList.get(i).equals(file.getAbsolutePath()) || mSizeList.get(i) != file.length()
+                || mLastModifiedList.get(i) != file.lastModified()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param fileList strings.xml files the index would be built from
+     * @return snapshot or null if it doesn't exist or wasn't built from the same files (as they are now)
+     */
+    static IndexSnapshot read(File file, List<File> fileList) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != VERSION) {
+                // old format
+                return null;
+            }
+
+            IndexSnapshot snapshot = new IndexSnapshot();
+            int numFiles = buffer.getInt();
+            for (int i = 0; i < numFiles; i++) {
+                snapshot.mPathList.add(readString(buffer));
+                snapshot.mSizeList.add(buffer.getLong());
+                snapshot.mLastModifiedList.add(buffer.getLong());
+                snapshot.mHashList.add(readString(buffer));
+            }
+            if (!snapshot.isSameFiles(fileList) || !snapshot.mHashList.equals(new IndexSnapshot(fileList).mHashList)) {
+                return null;
+            }
+
+            snapshot.stringsHash = readString(buffer);
+
+            // keys are added in id order so ids (and the order new strings are added in) are the same as last run
+            snapshot.stringTable = new StringTable();
+            int numKeys = buffer.getInt();
+            String[] keys = new String[numKeys];
+            for (int keyId = 0; keyId < numKeys; keyId++) {
+                keys[keyId] = readString(buffer);
+                snapshot.stringTable.addKey(keys[keyId]);
+            }
+            int numUntranslatable = buffer.getInt();
+            for (int i = 0; i < numUntranslatable; i++) {
+                snapshot.stringTable.setUntranslatable(keys[buffer.getInt()]);
+            }
+            int numLanguages = buffer.getInt();
+            for (int i = 0; i < numLanguages; i++) {
+                String langCode = readString(buffer);
+                snapshot.stringTable.addLanguage(langCode);
+                int numStrings = buffer.getInt();
+                for (int j = 0; j < numStrings; j++) {
+                    String key = keys[buffer.getInt()];
+                    snapshot.stringTable.put(langCode, key, readString(buffer));
+                }
+            }
+
+            snapshot.pluralMap = new TreeMap<String, Map<String, Map<String, String>>>();
+            int numPluralLanguages = buffer.getInt();
+            for (int i = 0; i < numPluralLanguages; i++) {
+                String langCode = readString(buffer);
+                Map<String, Map<String, String>> langPluralMap = new TreeMap<String, Map<String, String>>();
+                int numPlurals = buffer.getInt();
+                for (int j = 0; j < numPlurals; j++) {
+                    String key = readString(buffer);
+                    Map<String, String> quantityMap = new LinkedHashMap<String, String>();
+                    int numQuantities = buffer.getInt();
+                    for (int k = 0; k < numQuantities; k++) {
+                        String quantity = readString(buffer);
+                        quantityMap.put(quantity, readString(buffer));
+                    }
+                    langPluralMap.put(key, quantityMap);
+                }
+                snapshot.pluralMap.put(langCode, langPluralMap);
+            }
+
+            int numValues = buffer.getInt();
+            snapshot.valueKeyMap = new HashMap<String, String>(numValues * 2);
+            for (int i = 0; i < numValues; i++) {
+                String value = readString(buffer);
+                snapshot.valueKeyMap.put(value, keys[buffer.getInt()]);
+            }
+
+            int numDuplicates = buffer.getInt();
+            snapshot.duplicateList = new ArrayList<String>(numDuplicates);
+            for (int i = 0; i < numDuplicates; i++) {
+                snapshot.duplicateList.add(readString(buffer));
+            }
+            return snapshot;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new IOException("snapshot is truncated or corrupt");
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * save snapshot; written to a temp file first so an interrupted write doesn't leave a partial snapshot
+     *
+     * @return # of bytes written
+     */
+    long write(File file) throws IOException {
+        Path path = file.toPath();
+        Path tempPath = TextFile.createTempFile(path);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)));
+            try {
+                writeContents(out);
+            } finally {
+                out.close();
+            }
+            long numBytes = Files.size(tempPath);
+            TextFile.replace(tempPath, path);
+            return numBytes;
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    private void writeContents(DataOutputStream out) throws IOException {
+        out.writeInt(VERSION);
+        out.writeInt(mPathList.size());
+        for (int i = 0; i < mPathList.size(); i++) {
+            writeString(out, mPathList.get(i));
+            out.writeLong(mSizeList.get(i));
+            out.writeLong(mLastModifiedList.get(i));
+            writeString(out, mHashList.get(i));
+        }
+        writeString(out, stringsHash);
+
+        out.writeInt(stringTable.getNumKeys());
+        for (int keyId = 0; keyId < stringTable.getNumKeys(); keyId++) {
+            writeString(out, stringTable.getKey(keyId));
+        }
+        BitSet untranslatableKeyIds = stringTable.getUntranslatableKeyIds();
+        out.writeInt(untranslatableKeyIds.cardinality());
+        for (int keyId = untranslatableKeyIds.nextSetBit(0); keyId >= 0; keyId = untranslatableKeyIds.nextSetBit(keyId + 1)) {
+            out.writeInt(keyId);
+        }
+        out.writeInt(stringTable.getLanguages().size());
+        for (String langCode : stringTable.getLanguages()) {
+            writeString(out, langCode);
+            BitSet keyIds = stringTable.getKeyIds(langCode);
+            out.writeInt(keyIds.cardinality());
+            for (int keyId = keyIds.nextSetBit(0); keyId >= 0; keyId = keyIds.nextSetBit(keyId + 1)) {
+                out.writeInt(keyId);
+                writeString(out, stringTable.get(langCode, keyId));
+            }
+        }
+
+        out.writeInt(pluralMap.size());
+        for (Map.Entry<String, Map<String, Map<String, String>>> langEntry : pluralMap.entrySet()) {
+            writeString(out, langEntry.getKey());
+            out.writeInt(langEntry.getValue().size());
+            for (Map.Entry<String, Map<String, String>> entry : langEntry.getValue().entrySet()) {
+                writeString(out, entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (Map.Entry<String, String> quantityEntry : entry.getValue().entrySet()) {
+                    writeString(out, quantityEntry.getKey());
+                    writeString(out, quantityEntry.getValue());
+                }
+            }
+        }
+
+        out.writeInt(valueKeyMap.size());
+        for (Map.Entry<String, String> entry : valueKeyMap.entrySet()) {
+            writeString(out, entry.getKey());
+            out.writeInt(stringTable.getKeyId(entry.getValue()));
+        }
+
+        out.writeInt(duplicateList.size());
+        for (String line : duplicateList) {
+            writeString(out, line);
+        }
+    }
+
+    // same format as FingerprintCache: length + UTF-8 bytes
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        byte[] bytes = str.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
@@ -1,135 +1,1583 @@
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.RecursiveTask;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 /**
  * convert Android strings into iOS localized strings.
+ * <p>
+ * all state for a single Android/iOS project pair is kept in an instance so several pairs can be run at once (--batch)
  */
 public class LocalizeStrings {
 
     private static final String TRANSLATE_TO = "TRANSLATE TO ";
 
-    // map of language code (ie: "en", "es") to Map<String, String> which contains key ("text_ok") to value ("OK")
-    private static Map<String, Map<String, String>> mLangMap = new TreeMap<String, Map<String, String>>();
+    // default location of --incremental cache (in iOS root)
+    private static final String CACHE_FILENAME = ".localizestrings.cache";
+
+    // default location of include/exclude rules (in iOS root); default rules are used if it doesn't exist
+    private static final String CONFIG_FILENAME = ".localizestrings.conf";
+
+    // all strings: key ("text_ok") x language code (ie: "en", "es") -> value ("OK")
+    private StringTable mStringTable = new StringTable();
+
+    // plurals for all languages: language code -> key -> quantity ("one", "other") -> value; sorted by language and key
+    private final Map<String, Map<String, Map<String, String>>> mPluralMap = new TreeMap<String, Map<String, Map<String, String>>>();
+
+    // reverse index of English value ("OK") to key ("text_ok"); built once after indexing
+    private final Map<String, String> mValueKeyMap = new HashMap<String, String>();
+
+    // "duplicate value" messages printed when value -> key index was built
+    private List<String> mDuplicateList = new ArrayList<String>();
+
+    // matches iOS strings against English values in a single pass; pattern id -> key
+    private StringTrie mValueMatcher;
+    private String[] mValueMatcherKeys;
+
+    // --normalize: English values by canonical form, checked when an iOS string doesn't match exactly; null when not used
+    private NormalizedIndex mNormalizedIndex;
 
     private static String DEFAULT_LANGUAGE = "en";
 
     // what resources we're looking for..
     private static String USE_STRING = "string";
+    private static String USE_PLURALS = "plurals";
+    private static String USE_ARRAY = "string-array";
+
+    // namespace prefix of placeholder tags in Android strings: <xliff:g id="count">%d</xliff:g>
+    private static final String XLIFF_PREFIX = "xliff";
+
+    // # of threads used to read strings.xml files and search iOS files (--threads=N); with --batch, shared by all projects
+    private static int mNumThreads = Runtime.getRuntime().availableProcessors();
+
+    // run timers and counters; printed as JSON with --metrics
+    private final Metrics mMetrics = new Metrics();
+
+    // map of language code to iOS Localizable.strings file for that language
+    private final Map<String, LocalizedStringsFile> mLocalizedFileMap = new TreeMap<String, LocalizedStringsFile>();
+
+    // Android res/ directories in override order: a string in a later directory replaces the same string in an earlier one
+    private final List<File> mResDirList;
+    private final File iosRoot;
+
+    // where messages are printed; with --batch, each project's output is printed once it's done
+    private final PrintStream mOut;
+
+    // which iOS files are searched
+    private PathFilter mPathFilter;
 
-    private static int mNumLocalizedStrings;
+    // file fingerprints from last run (--incremental); null when not used
+    private FingerprintCache mCache;
 
-    private static File iosRoot;
+    // index to save with fingerprints (--incremental) for the next run; null if the saved one is still up to date
+    private IndexSnapshot mSnapshot;
+
+    // set when English values / any strings are different than the last run (always true without --incremental)
+    private boolean mValuesChanged = true;
+    private boolean mStringsChanged = true;
+
+    // --dry-run: a diff of each change is printed here instead of writing any files; null when not used
+    private PrintStream mDiffOut;
+
+    // --report: coverage report written during the run; null when not used
+    private CoverageReport mReport;
+
+    // --reverse: keys of string-array items (name_0, name_1, ..) which can't be written back as strings; null when not used
+    private Set<String> mArrayKeySet;
+
+    // # of files per thread which are searched ahead of the next file whose results are added
+    private static final int SEARCH_AHEAD = 4;
+
+    // how deep to look for Gradle modules under the Android path (ie: <Android path>/features/login/build.gradle)
+    private static final int MAX_MODULE_DEPTH = 3;
+
+    // --watch: time to wait for more changes before localizing again
+    private static final long WATCH_DELAY_MS = 500;
+
+    // strings/plurals read from each strings.xml file; only kept with --watch so a changed file can be read again by itself
+    private Map<File, ParsedFile> mParsedFileMap;
+
+    LocalizeStrings(List<File> resDirList, File iosRoot, PrintStream out) {
+        mResDirList = resDirList;
+        this.iosRoot = iosRoot;
+        mOut = out;
+        mPathFilter = PathFilter.createDefault(iosRoot);
+    }
+
+    /**
+     * read include/exclude rules for iOS files
+     *
+     * @param configFile rules file (--config) or null for default location
+     */
+    void loadConfig(String configFile) throws IOException {
+        File file = configFile != null ? new File(configFile) : new File(iosRoot, CONFIG_FILENAME);
+        if (configFile != null || file.exists()) {
+            mPathFilter = PathFilter.load(iosRoot, file);
+        }
+    }
 
     public static void main(String[] args) {
-        if (args.length < 2) {
-            System.out.println("Program to convert Android strings into iOS localized strings");
-            System.out.println("usage: LocalizeStrings <Android path> <iOS path>");
-            System.out.println("- where <path> is the path to an Android project (where AndroidManifest.xml exists)");
-            System.out.println("");
-            System.out.println("eg: java LocalizeStrings ~/working/mobeam/beepngo-android/BeepNGo ~/working/mobeam/beepngo-ios/Beepngo");
+        List<String> pathList = new ArrayList<String>();
+        String cacheFile = null;
+        // "" to print metrics to stdout
+        String metricsFile = null;
+        String batchFile = null;
+        String configFile = null;
+        boolean isWatch = false;
+        // "" to print diff to stdout
+        String dryRunFile = null;
+        // --res: res/ directories (relative to Android path) used instead of the ones found in the project
+        List<String> resPathList = null;
+        List<String> flavorList = new ArrayList<String>();
+        boolean isNormalize = false;
+        String reportFile = null;
+        boolean isReverse = false;
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                pathList.add(arg);
+            } else if (arg.startsWith("--threads=")) {
+                try {
+                    mNumThreads = Integer.parseInt(arg.substring("--threads=".length()));
+                } catch (NumberFormatException e) {
+                    mNumThreads = 0;
+                }
+                if (mNumThreads < 1) {
+                    System.out.println("invalid thread count: " + arg);
+                    System.exit(0);
+                }
+            } else if (arg.equals("--metrics")) {
+                metricsFile = "";
+            } else if (arg.startsWith("--metrics=")) {
+                metricsFile = arg.substring("--metrics=".length());
+            } else if (arg.equals("--incremental")) {
+                cacheFile = "";
+            } else if (arg.startsWith("--incremental=")) {
+                cacheFile = arg.substring("--incremental=".length());
+            } else if (arg.startsWith("--config=")) {
+                configFile = arg.substring("--config=".length());
+            } else if (arg.equals("--watch")) {
+                isWatch = true;
+            } else if (arg.startsWith("--batch=")) {
+                batchFile = arg.substring("--batch=".length());
+            } else if (arg.startsWith("--res=")) {
+                resPathList = splitList(arg.substring("--res=".length()));
+            } else if (arg.startsWith("--flavors=")) {
+                flavorList = splitList(arg.substring("--flavors=".length()));
+            } else if (arg.startsWith("--report=")) {
+                reportFile = arg.substring("--report=".length());
+            } else if (arg.equals("--reverse")) {
+                isReverse = true;
+            } else if (arg.equals("--normalize")) {
+                isNormalize = true;
+            } else if (arg.equals("--dry-run")) {
+                dryRunFile = "";
+            } else if (arg.startsWith("--dry-run=")) {
+                dryRunFile = arg.substring("--dry-run=".length());
+            } else {
+                System.out.println("unknown option: " + arg);
+                printUsage();
+            }
+        }
+
+        if (dryRunFile != null && (isWatch || batchFile != null)) {
+            System.out.println("--dry-run can't be used with --watch or --batch");
             System.exit(0);
+        } else if (reportFile != null && (isWatch || batchFile != null)) {
+            System.out.println("--report can't be used with --watch or --batch");
+            System.exit(0);
+        } else if (isReverse && (isWatch || batchFile != null || cacheFile != null || reportFile != null)) {
+            System.out.println("--reverse can't be used with --watch, --batch, --incremental or --report");
+            System.exit(0);
+        }
+
+        if (batchFile != null) {
+            if (pathList.size() > 0 || isWatch) {
+                printUsage();
+            } else if (cacheFile != null && cacheFile.length() > 0) {
+                // every project needs its own cache
+                System.out.println("--incremental=<file> can't be used with --batch; cache is saved in each iOS path");
+                System.exit(0);
+            } else if (resPathList != null) {
+                System.out.println("--res can't be used with --batch; res/ directories are found in each Android path");
+                System.exit(0);
+            }
+            int numFailed = runBatch(new File(batchFile), cacheFile, configFile, metricsFile, flavorList, isNormalize);
+            // non-zero exit code so scripts (CI) can tell a project failed
+            System.exit(numFailed > 0 ? 1 : 0);
+            return;
         }
 
-        String androidRoot = args[0];
+        if (pathList.size() < 2) {
+            printUsage();
+        }
 
-        File mainFile = new File(androidRoot + "/AndroidManifest.xml");
-        if (mainFile.exists() == false) {
-            System.out.println("file: " + mainFile + " does not exist!\nBase directory should point to an Android project.");
+        File androidRoot = new File(pathList.get(0));
+        File iosRoot = new File(pathList.get(1));
+        List<File> resDirList;
+        if (resPathList != null) {
+            resDirList = new ArrayList<File>();
+            for (String path : resPathList) {
+                resDirList.add(resolvePath(androidRoot, path));
+            }
+        } else {
+            resDirList = findResDirs(androidRoot, flavorList);
+        }
+        String error = checkProject(androidRoot, resDirList, iosRoot);
+        if (error != null) {
+            System.out.println(error);
             System.exit(0);
         }
 
-        iosRoot = new File(args[1]);
-        if (iosRoot.exists() == false) {
-            System.out.println("iOS directory: " + mainFile + " does not exist!\nBase directory should point to an iOS project root directory.");
+        // when diff is printed to stdout, everything else goes to stderr so stdout is only the diff
+        PrintStream out = dryRunFile != null && dryRunFile.length() == 0 ? System.err : System.out;
+        LocalizeStrings localizer = new LocalizeStrings(resDirList, iosRoot, out);
+        if (dryRunFile != null) {
+            try {
+                // stdout too: System.out uses the platform charset, which turns non-ASCII chars into '?' (C/POSIX locale)
+                localizer.mDiffOut = dryRunFile.length() == 0 ? new PrintStream(new FileOutputStream(FileDescriptor.out), true, "UTF-8")
+                    : new PrintStream(new BufferedOutputStream(new FileOutputStream(dryRunFile)), false, "UTF-8");
+            } catch (IOException e) {
+                System.out.println("Error creating diff file: " + dryRunFile + ", " + e.getMessage());
+                System.exit(0);
+            }
+        }
+        if (reportFile != null) {
+            try {
+                Writer reportOut = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(reportFile), "UTF-8"));
+                localizer.mReport = new CoverageReport(reportOut, reportFile.toLowerCase(Locale.US).endsWith(".csv"));
+            } catch (IOException e) {
+                System.out.println("Error creating report file: " + reportFile + ", " + e.getMessage());
+                System.exit(0);
+            }
+        }
+        if (isNormalize) {
+            localizer.mNormalizedIndex = new NormalizedIndex();
+        }
+        if (isWatch) {
+            localizer.mParsedFileMap = new HashMap<File, ParsedFile>();
+        }
+        try {
+            localizer.loadConfig(configFile);
+        } catch (IOException e) {
+            System.out.println("Error reading config: " + e.getMessage());
             System.exit(0);
         }
+        if (isReverse) {
+            localizer.runReverse();
+        } else {
+            localizer.run(cacheFile);
+        }
+        if (localizer.mDiffOut != null) {
+            localizer.mDiffOut.flush();
+            if (dryRunFile.length() > 0) {
+                localizer.mDiffOut.close();
+            }
+        }
+
+        if (metricsFile != null) {
+            writeMetrics(out, metricsFile, localizer.mMetrics.toJson());
+        }
+
+        if (isWatch) {
+            localizer.watch();
+        }
+    }
+
+    // check that paths point to an Android and iOS project; returns error message or null if they're ok
+    private static String checkProject(File androidRoot, List<File> resDirList, File iosRoot) {
+        if (resDirList.isEmpty()) {
+            return "no res directory found in: " + androidRoot
+                + "\nBase directory should point to an Android project (with AndroidManifest.xml or build.gradle).";
+        }
+        for (File resDir : resDirList) {
+            if (resDir.isDirectory() == false) {
+                return "res directory: " + resDir + " does not exist!";
+            }
+        }
+        if (iosRoot.exists() == false) {
+            return "iOS directory: " + iosRoot + " does not exist!\nBase directory should point to an iOS project root directory.";
+        }
+        return null;
+    }
+
+    /**
+     * localize iOS project
+     *
+     * @param cacheFile fingerprint cache (--incremental); "" for default location or null to not use one
+     */
+    void run(String cacheFile) {
+        if (cacheFile != null) {
+            mCache = new FingerprintCache(cacheFile.length() > 0 ? new File(cacheFile) : new File(iosRoot, CACHE_FILENAME));
+            try {
+                long numBytes = mCache.read();
+                if (numBytes >= 0) {
+                    mMetrics.increment(Metrics.Counter.FILES_READ);
+                    mMetrics.add(Metrics.Counter.BYTES_READ, numBytes);
+                }
+            } catch (IOException e) {
+                mOut.println("Error reading cache: " + mCache.getFile() + ", " + e.getMessage());
+            }
+        }
+
+        mOut.println("Indexing strings...");
+        mMetrics.start(Metrics.Phase.INDEX);
+
+        List<File> stringsFileList = findStringsFiles();
+        if (!loadSnapshot(stringsFileList)) {
+            if (mCache != null) {
+                mSnapshot = createSnapshot(stringsFileList);
+            }
+
+            // index strings in all .xml files in values*/ directory
+            indexStrings(stringsFileList);
+
+            // build English value -> key lookup used when searching iOS files
+            indexValues();
+
+            if (mCache != null) {
+                // only need to search unchanged files again if English strings changed
+                String valuesHash = hashValues(mValueKeyMap, mNormalizedIndex != null);
+                String stringsHash = hashStrings(mStringTable, mPluralMap);
+                mValuesChanged = !valuesHash.equals(mCache.getValuesHash());
+                mStringsChanged = !stringsHash.equals(mCache.getStringsHash());
+                mCache.setValuesHash(valuesHash);
+                mCache.setStringsHash(stringsHash);
+            }
+        }
+        mMetrics.stop(Metrics.Phase.INDEX);
+
+        // print out # of strings found for each language
+        Iterator<String> it = mStringTable.getLanguages().iterator();
+        while (it.hasNext()) {
+            String key = it.next();
+            int numStrings = mStringTable.size(key);
+            if (numStrings > 0) {
+                mOut.println("language:" + key + ", strings:" + numStrings);
+            }
+        }
+        if (mReport != null) {
+            startReport();
+        }
+
+        // find and replace all source files in iOS directory which have a string-value match
+        mMetrics.start(Metrics.Phase.SCAN);
+        searchDirForUse(iosRoot);
+
+        mMetrics.stop(Metrics.Phase.SCAN);
+
+        mOut.println("Localized " + mMetrics.get(Metrics.Counter.STRINGS_LOCALIZED) + " strings");
+        if (mCache != null) {
+            mOut.println("Skipped " + mMetrics.get(Metrics.Counter.FILES_SKIPPED) + " unchanged files");
+        }
+
+        // add remaining strings to iOS localized file even if they're not used
+        // - nothing to do if strings haven't changed since they were added last run
+        mMetrics.start(Metrics.Phase.FILL);
+        if (mStringsChanged) {
+            addRemainingStrings();
+        }
+        mMetrics.stop(Metrics.Phase.FILL);
+
+        // save all changes to iOS localized files
+        mMetrics.start(Metrics.Phase.WRITE);
+        writeLocalizedFiles();
+        writePluralFiles();
+
+        // save fingerprints last so an interrupted run is repeated in full next time
+        writeCache();
+        mMetrics.stop(Metrics.Phase.WRITE);
+        mMetrics.finish();
+
+        if (mReport != null) {
+            try {
+                mReport.close();
+            } catch (IOException e) {
+                mOut.println("Error writing report: " + e.getMessage());
+            }
+            mReport = null;
+        }
+    }
+
+    // --report: write translated/missing counts and missing keys of each language; translatable="false" strings aren't
+    // counted since they're never missing
+    private void startReport() {
+        BitSet translatableKeyIds = (BitSet) mStringTable.getKeyIds(DEFAULT_LANGUAGE).clone();
+        translatableKeyIds.andNot(mStringTable.getUntranslatableKeyIds());
+        try {
+            for (String langCode : mStringTable.getLanguages()) {
+                BitSet missingKeyIds = mStringTable.getMissingKeyIds(DEFAULT_LANGUAGE, langCode);
+                List<String> missingKeyList = new ArrayList<String>();
+                List<String> englishList = new ArrayList<String>();
+                for (int keyId = missingKeyIds.nextSetBit(0); keyId >= 0; keyId = missingKeyIds.nextSetBit(keyId + 1)) {
+                    missingKeyList.add(mStringTable.getKey(keyId));
+                    englishList.add(mStringTable.get(DEFAULT_LANGUAGE, keyId));
+                }
+                int numTranslated = translatableKeyIds.cardinality() - missingKeyList.size();
+                mReport.addLanguage(langCode, numTranslated, missingKeyList, englishList);
+            }
+            mReport.startStrings();
+        } catch (IOException e) {
+            mOut.println("Error writing report: " + e.getMessage());
+            mReport = null;
+        }
+    }
+
+    // add matches of a file to iOS localized files; called in the order files were found so output is the same for any #
+    // of threads
+    private void addSearchResult(SearchResult result) {
+        for (String logLine : result.logList) {
+            mOut.println(logLine);
+        }
+        if (mReport != null) {
+            try {
+                mReport.addStrings(result.reportList);
+            } catch (IOException e) {
+                mOut.println("Error writing report: " + e.getMessage());
+                mReport = null;
+            }
+        }
+        if (result.diff != null) {
+            mDiffOut.print(result.diff);
+        }
+        for (String androidKey : result.keyList) {
+            addLocalizedString(androidKey);
+        }
+    }
+
+    // add English strings and untranslated strings (English version) to Localizable.strings
+    private void addRemainingStrings() {
+        if (!mStringTable.getLanguages().contains(DEFAULT_LANGUAGE)) {
+            return;
+        }
+        BitSet englishKeyIds = mStringTable.getKeyIds(DEFAULT_LANGUAGE);
+        for (int keyId = englishKeyIds.nextSetBit(0); keyId >= 0; keyId = englishKeyIds.nextSetBit(keyId + 1)) {
+            addLocalizedString(mStringTable.getKey(keyId));
+        }
+
+        // next, find any untranslated strings (ie: in English but not other translations) and add these
+        Iterator<String> it = mStringTable.getLanguages().iterator();
+        while (it.hasNext()) {
+            String key = it.next();
+            if (key.equals(DEFAULT_LANGUAGE)) {
+                continue;
+            }
+            // find difference in keys
+            BitSet missingKeyIds = mStringTable.getMissingKeyIds(DEFAULT_LANGUAGE, key);
+
+            // for each missing key - add English version to translation file
+            for (int keyId = missingKeyIds.nextSetBit(0); keyId >= 0; keyId = missingKeyIds.nextSetBit(keyId + 1)) {
+                String englishString = mStringTable.get(DEFAULT_LANGUAGE, keyId);
+                addLocalizedStringForLanguage(key, mStringTable.getKey(keyId), englishString, false);
+            }
+        }
+    }
+
+    private void writeCache() {
+        // --dry-run: nothing was written so next run has to do the same work
+        if (mCache == null || mDiffOut != null) {
+            return;
+        }
+        try {
+            mCache.write();
+        } catch (IOException e) {
+            mOut.println("Error writing cache: " + mCache.getFile() + ", " + e.getMessage());
+        }
+
+        if (mSnapshot != null) {
+            mSnapshot.stringTable = mStringTable;
+            mSnapshot.pluralMap = mPluralMap;
+            mSnapshot.valueKeyMap = mValueKeyMap;
+            mSnapshot.duplicateList = mDuplicateList;
+            mSnapshot.stringsHash = mCache.getStringsHash();
+            try {
+                mSnapshot.write(getSnapshotFile());
+                mSnapshot = null;
+            } catch (IOException e) {
+                mOut.println("Error writing index: " + getSnapshotFile() + ", " + e.getMessage());
+            }
+        }
+    }
+
+    // --incremental: record strings.xml files the index is built from; null (no snapshot saved) if one can't be hashed
+    private IndexSnapshot createSnapshot(List<File> stringsFileList) {
+        try {
+            return new IndexSnapshot(stringsFileList);
+        } catch (IOException e) {
+            mOut.println("Error hashing strings files: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // index snapshot is saved next to fingerprint cache
+    private File getSnapshotFile() {
+        return new File(mCache.getFile().getPath() + ".index");
+    }
+
+    /**
+     * --incremental: load index saved by the last run if no strings.xml file has changed since
+     *
+     * @return false if index needs to be built
+     */
+    private boolean loadSnapshot(List<File> stringsFileList) {
+        if (mCache == null) {
+            return false;
+        }
+        File file = getSnapshotFile();
+        IndexSnapshot snapshot;
+        try {
+            snapshot = IndexSnapshot.read(file, stringsFileList);
+        } catch (IOException e) {
+            mOut.println("Error reading index: " + file + ", " + e.getMessage());
+            return false;
+        }
+        if (snapshot == null) {
+            return false;
+        }
+        mMetrics.increment(Metrics.Counter.FILES_READ);
+        mMetrics.add(Metrics.Counter.BYTES_READ, file.length());
+
+        mStringTable = snapshot.stringTable;
+        mPluralMap.clear();
+        mPluralMap.putAll(snapshot.pluralMap);
+        mValueKeyMap.clear();
+        mValueKeyMap.putAll(snapshot.valueKeyMap);
+        mDuplicateList = snapshot.duplicateList;
+        for (String line : mDuplicateList) {
+            mOut.println(line);
+        }
+        buildValueMatcher();
+
+        // hashed again since it depends on --normalize
+        String valuesHash = hashValues(mValueKeyMap, mNormalizedIndex != null);
+        mValuesChanged = !valuesHash.equals(mCache.getValuesHash());
+        mStringsChanged = !snapshot.stringsHash.equals(mCache.getStringsHash());
+        mCache.setValuesHash(valuesHash);
+        mCache.setStringsHash(snapshot.stringsHash);
+        return true;
+    }
+
+    /**
+     * --reverse: copy strings which were changed in iOS Localizable.strings files (ie: by translators) back to Android
+     * strings.xml files. A string is copied if it's different than what would be written to iOS for it; it's updated in
+     * the strings.xml file it was read from or, for a new translation, added to values-&lt;lang&gt;/ next to the English
+     * one. Changes are collected first so each strings.xml file is written at most once.
+     */
+    void runReverse() {
+        mOut.println("Indexing strings...");
+        mMetrics.start(Metrics.Phase.INDEX);
+        mArrayKeySet = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        List<ParsedFile> parsedList = indexStrings(findStringsFiles());
+        // language code -> key -> strings.xml file it was read from (the last one if it's in more than 1)
+        Map<String, Map<String, File>> keyFileMap = new HashMap<String, Map<String, File>>();
+        for (ParsedFile parsed : parsedList) {
+            Map<String, File> fileMap = keyFileMap.get(parsed.langCode);
+            if (fileMap == null) {
+                fileMap = new HashMap<String, File>();
+                keyFileMap.put(parsed.langCode, fileMap);
+            }
+            for (String key : parsed.stringMap.keySet()) {
+                fileMap.put(key, parsed.file);
+            }
+        }
+        mMetrics.stop(Metrics.Phase.INDEX);
+
+        // strings.xml file -> key -> new value
+        mMetrics.start(Metrics.Phase.SCAN);
+        Map<File, Map<String, String>> changeMap = new TreeMap<File, Map<String, String>>();
+        File[] dirArr = new File(iosRoot, "resources").listFiles();
+        if (dirArr != null) {
+            Arrays.sort(dirArr);
+            for (File dir : dirArr) {
+                String dirName = dir.getName();
+                if (dir.isDirectory() && dirName.endsWith(".lproj")) {
+                    String langCode = dirName.substring(0, dirName.length() - ".lproj".length());
+                    if (getDirFromLanguageCode(langCode) == null) {
+                        // Base.lproj (storyboards) or a language Android doesn't have a values-*/ directory for
+                        if (new File(dir, "Localizable.strings").exists()) {
+                            mOut.println("runReverse: Skipping " + dirName + ", not an Android language");
+                        }
+                        continue;
+                    }
+                    addReverseChanges(new File(dir, "Localizable.strings"), langCode, keyFileMap, changeMap);
+                }
+            }
+        }
+        mMetrics.stop(Metrics.Phase.SCAN);
+
+        mMetrics.start(Metrics.Phase.WRITE);
+        int numChanged = 0;
+        for (Map.Entry<File, Map<String, String>> entry : changeMap.entrySet()) {
+            writeStringsXml(entry.getKey(), entry.getValue());
+            numChanged += entry.getValue().size();
+        }
+        mMetrics.stop(Metrics.Phase.WRITE);
+        mOut.println("Copied " + numChanged + " strings to " + changeMap.size() + " Android files");
+        mMetrics.finish();
+    }
+
+    // find strings in a Localizable.strings file which are different than Android's and add them to changeMap
+    private void addReverseChanges(File file, String langCode, Map<String, Map<String, File>> keyFileMap,
+        Map<File, Map<String, String>> changeMap) {
+        Map<String, String> valueMap;
+        try {
+            // strings marked as untranslated are the English version
+            valueMap = LocalizedStringsFile.readValues(file, TRANSLATE_TO);
+        } catch (IOException e) {
+            mOut.println("runReverse: Error reading file: " + file + ", " + e.getMessage());
+            return;
+        }
+        if (file.exists()) {
+            mMetrics.increment(Metrics.Counter.FILES_READ);
+            mMetrics.add(Metrics.Counter.BYTES_READ, file.length());
+        }
+
+        Map<String, File> fileMap = keyFileMap.get(langCode);
+        for (Map.Entry<String, String> entry : valueMap.entrySet()) {
+            String key = entry.getKey();
+            String englishValue = mStringTable.get(DEFAULT_LANGUAGE, key);
+            if (englishValue == null || mArrayKeySet.contains(key)) {
+                // only in iOS or a string-array item
+                continue;
+            } else if (!langCode.equals(DEFAULT_LANGUAGE) && !mStringTable.isTranslatable(mStringTable.getKeyId(key))) {
+                // translatable="false" strings are only changed in English
+                continue;
+            }
+            String androidValue = mStringTable.get(langCode, key);
+            if (entry.getValue().equals(fixLocalizedString(androidValue != null ? androidValue : englishValue))) {
+                // unchanged (or English copy of an untranslated string)
+                continue;
+            }
+            String value = StringsXmlFile.escape(convertToAndroid(entry.getValue(), englishValue));
+            if (value.equals(androidValue)) {
+                // only escaped differently: it's -> it\'s
+                continue;
+            }
+
+            File xmlFile = fileMap != null ? fileMap.get(key) : null;
+            if (xmlFile == null) {
+                // new translation: values-<lang>/ of the res/ directory English string is in, same filename
+                File englishFile = keyFileMap.get(DEFAULT_LANGUAGE).get(key);
+                File valuesDir = new File(englishFile.getParentFile().getParentFile(), getDirFromLanguageCode(langCode));
+                xmlFile = new File(valuesDir, englishFile.getName());
+            }
+            Map<String, String> xmlChangeMap = changeMap.get(xmlFile);
+            if (xmlChangeMap == null) {
+                xmlChangeMap = new LinkedHashMap<String, String>();
+                changeMap.put(xmlFile, xmlChangeMap);
+            }
+            xmlChangeMap.put(key, value);
+            mOut.println((androidValue != null ? "updated (" : "added (") + langCode + "): " + key);
+        }
+    }
+
+    // rewrite strings.xml file with all changes to it at once (or print diff with --dry-run)
+    private void writeStringsXml(File file, Map<String, String> valueMap) {
+        try {
+            TextFile textFile = null;
+            CharSequence oldText = null;
+            if (file.exists()) {
+                textFile = TextFile.read(file);
+                mMetrics.increment(Metrics.Counter.FILES_READ);
+                mMetrics.add(Metrics.Counter.BYTES_READ, textFile.getNumBytes());
+                oldText = CharBuffer.wrap(textFile.getText(), 0, textFile.getLength());
+            }
+            String newText = StringsXmlFile.update(oldText, valueMap);
+            if (mDiffOut != null) {
+                String diff = UnifiedDiff.diff(file.getPath(), oldText, newText);
+                if (diff != null) {
+                    mDiffOut.print(diff);
+                }
+                return;
+            }
+
+            TextFile.createParentDirs(file);
+            long numBytes = textFile != null ? TextFile.write(file, newText, textFile.getCharset()) : TextFile.write(file, newText);
+            mMetrics.increment(Metrics.Counter.FILES_REWRITTEN);
+            mMetrics.add(Metrics.Counter.BYTES_WRITTEN, numBytes);
+        } catch (IOException e) {
+            mOut.println("ERROR writing file:" + file + ", " + e.getMessage());
+        }
+    }
+
+    // Android/iOS project pair from --batch manifest and its result
+    private static class BatchProject {
+        File androidRoot;
+        File iosRoot;
+        List<File> resDirList;
+        // set if project couldn't be localized
+        String error;
+        LocalizeStrings localizer;
+        long totalMs;
+        // messages printed while project was localized
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    }
+
+    // localize every project pair in manifest; projects are run at the same time and share mNumThreads threads
+    // - returns # of projects which failed
+    private static int runBatch(File manifestFile, final String cacheFile, final String configFile, String metricsFile,
+        List<String> flavorList, final boolean isNormalize) {
+        final List<BatchProject> projectList;
+        try {
+            projectList = readBatchManifest(manifestFile);
+        } catch (IOException e) {
+            System.out.println("Error reading batch file: " + manifestFile + ", " + e.getMessage());
+            System.exit(1);
+            return 0;
+        }
+
+        long startTime = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(mNumThreads);
+        try {
+            List<Future<?>> futureList = new ArrayList<Future<?>>();
+            for (final BatchProject project : projectList) {
+                project.resDirList = findResDirs(project.androidRoot, flavorList);
+                project.error = checkProject(project.androidRoot, project.resDirList, project.iosRoot);
+                if (project.error != null) {
+                    futureList.add(null);
+                    continue;
+                }
+                futureList.add(pool.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        runBatchProject(project, cacheFile, configFile, isNormalize);
+                    }
+                }));
+            }
+
+            // print output of each project (in manifest order) as soon as it's done
+            for (int i = 0; i < projectList.size(); i++) {
+                BatchProject project = projectList.get(i);
+                if (futureList.get(i) != null) {
+                    try {
+                        futureList.get(i).get();
+                    } catch (Exception e) {
+                        project.error = e.toString();
+                    }
+                }
+                System.out.println("=== " + project.androidRoot + " -> " + project.iosRoot);
+                System.out.print(project.output.toString());
+                if (project.error != null) {
+                    System.out.println(project.error);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
 
-        File resDir = new File(androidRoot + "/res");
+        int numFailed = printBatchSummary(projectList, (System.nanoTime() - startTime) / 1000000);
 
-        System.out.println("Indexing strings...");
+        if (metricsFile != null) {
+            writeMetrics(System.out, metricsFile, getBatchMetricsJson(projectList));
+        }
+        return numFailed;
+    }
 
-        // index strings in all .xml files in values*/ directory
-        indexStrings(resDir);
+    private static void runBatchProject(BatchProject project, String cacheFile, String configFile, boolean isNormalize) {
+        PrintStream out;
+        try {
+            out = new PrintStream(project.output, true, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new IllegalStateException(e);
+        }
+        try {
+            project.localizer = new LocalizeStrings(project.resDirList, project.iosRoot, out);
+            if (isNormalize) {
+                project.localizer.mNormalizedIndex = new NormalizedIndex();
+            }
+            project.localizer.loadConfig(configFile);
+            project.localizer.run(cacheFile);
+            project.totalMs = project.localizer.mMetrics.getTotalMillis();
+        } catch (IOException e) {
+            project.error = "Error reading config: " + e.getMessage();
+        } catch (RuntimeException e) {
+            project.error = "Error localizing project: " + e;
+            e.printStackTrace(out);
+        } finally {
+            out.flush();
+        }
+    }
+
+    // manifest has 1 project per line: <Android path> <iOS path> (separate with a tab if paths contain spaces)
+    // - blank lines and lines starting with # are ignored; relative paths are relative to the manifest
+    private static List<BatchProject> readBatchManifest(File manifestFile) throws IOException {
+        TextFile textFile = TextFile.read(manifestFile);
+        String text = new String(textFile.getText(), 0, textFile.getLength());
+        File baseDir = manifestFile.getAbsoluteFile().getParentFile();
+
+        List<BatchProject> projectList = new ArrayList<BatchProject>();
+        String[] lineArr = text.split("\r\n|\r|\n");
+        for (int i = 0; i < lineArr.length; i++) {
+            String line = lineArr[i].trim();
+            if (line.length() == 0 || line.startsWith("#")) {
+                continue;
+            }
+            String[] pathArr = line.indexOf('\t') >= 0 ? line.split("\t+") : line.split("\\s+");
+            if (pathArr.length != 2) {
+                throw new IOException("line " + (i + 1) + ": expected <Android path> <iOS path>: " + line);
+            }
+            BatchProject project = new BatchProject();
+            project.androidRoot = resolvePath(baseDir, pathArr[0].trim());
+            project.iosRoot = resolvePath(baseDir, pathArr[1].trim());
+            projectList.add(project);
+        }
+        return projectList;
+    }
+
+    private static File resolvePath(File baseDir, String path) {
+        File file = new File(path);
+        return file.isAbsolute() ? file : new File(baseDir, path);
+    }
+
+    // comma separated option value; empty items are left out
+    private static List<String> splitList(String value) {
+        List<String> list = new ArrayList<String>();
+        for (String item : value.split(",")) {
+            if (item.trim().length() > 0) {
+                list.add(item.trim());
+            }
+        }
+        return list;
+    }
+
+    // returns # of projects which failed
+    private static int printBatchSummary(List<BatchProject> projectList, long totalMs) {
+        long numLocalized = 0;
+        long numRewritten = 0;
+        long numKeysAdded = 0;
+        int numFailed = 0;
+        System.out.println("");
+        System.out.println("Batch summary:");
+        for (BatchProject project : projectList) {
+            if (project.error != null) {
+                numFailed++;
+                // first line of error is enough here
+                String error = project.error;
+                int newlinePos = error.indexOf('\n');
+                System.out.println("  " + project.iosRoot + ": FAILED, " + (newlinePos >= 0 ? error.substring(0, newlinePos) : error));
+                continue;
+            }
+            Metrics metrics = project.localizer.mMetrics;
+            numLocalized += metrics.get(Metrics.Counter.STRINGS_LOCALIZED);
+            numRewritten += metrics.get(Metrics.Counter.FILES_REWRITTEN);
+            numKeysAdded += metrics.getKeysAdded();
+            System.out.println("  " + project.iosRoot + ": localized " + metrics.get(Metrics.Counter.STRINGS_LOCALIZED) + " strings, rewrote "
+                + metrics.get(Metrics.Counter.FILES_REWRITTEN) + " files, added " + metrics.getKeysAdded() + " keys (" + project.totalMs + " ms)");
+        }
+        System.out.println("Total: " + projectList.size() + " projects, " + numFailed + " failed, localized " + numLocalized + " strings, rewrote "
+            + numRewritten + " files, added " + numKeysAdded + " keys (" + totalMs + " ms)");
+        return numFailed;
+    }
+
+    // metrics for each project: { "projects": [ { "android": .., "ios": .., "metrics": {..} }, .. ] }
+    private static String getBatchMetricsJson(List<BatchProject> projectList) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n\"projects\": [");
+        int i = 0;
+        for (BatchProject project : projectList) {
+            sb.append(i++ > 0 ? ",\n" : "\n");
+            sb.append("{\n\"android\": ");
+            Metrics.appendString(sb, project.androidRoot.getPath());
+            sb.append(",\n\"ios\": ");
+            Metrics.appendString(sb, project.iosRoot.getPath());
+            if (project.error != null) {
+                sb.append(",\n\"error\": ");
+                Metrics.appendString(sb, project.error);
+            } else {
+                sb.append(",\n\"metrics\": ").append(project.localizer.mMetrics.toJson().trim());
+            }
+            sb.append("\n}");
+        }
+        sb.append("\n]\n}\n");
+        return sb.toString();
+    }
+
+    // print metrics to out or save to metricsFile (if not "")
+    private static void writeMetrics(PrintStream out, String metricsFile, String json) {
+        if (metricsFile.length() == 0) {
+            out.print(json);
+            return;
+        }
+        try {
+            TextFile.write(new File(metricsFile), json);
+        } catch (IOException e) {
+            out.println("Error writing metrics: " + metricsFile + ", " + e.getMessage());
+        }
+    }
+
+    private static void printUsage() {
+        System.out.println("Program to convert Android strings into iOS localized strings");
+        System.out.println("usage: LocalizeStrings [options] <Android path> <iOS path>");
+        System.out.println("       LocalizeStrings [options] --batch=<file>");
+        System.out.println("- where <path> is the path to an Android project (where AndroidManifest.xml or build.gradle exists)");
+        System.out.println("");
+        System.out.println("options:");
+        System.out.println("  --threads=N               # of threads used to search iOS files (default: # of cores)");
+        System.out.println("  --incremental[=<file>]    skip files which haven't changed since last run (default cache: <iOS path>/" + CACHE_FILENAME + ")");
+        System.out.println("  --config=<file>           include/exclude rules for iOS files (default: <iOS path>/" + CONFIG_FILENAME + " if it exists)");
+        System.out.println("  --metrics[=<file>]        print timings and counters as JSON when done (or save to file)");
+        System.out.println("  --watch                   keep running and localize again when Android strings or iOS files change");
+        System.out.println("  --batch=<file>            localize each '<Android path> <iOS path>' line of file; projects are run at the same time");
+        System.out.println("  --dry-run[=<file>]        don't change any files; print a unified diff of the changes instead (or save to file)");
+        System.out.println("  --res=<dir>[,<dir>..]     res directories to read (relative to Android path), lowest priority first");
+        System.out.println("  --flavors=<name>[,..]     also read src/<name>/res of each module; later flavors override earlier ones");
+        System.out.println("  --report=<file>           save translated/missing strings per language and iOS strings which weren't localized (.csv or JSON)");
+        System.out.println("  --reverse                 copy strings changed in iOS Localizable.strings files back to Android strings.xml files");
+        System.out.println("  --normalize               also match iOS strings which only differ in case, whitespace or placeholders; each one is printed");
+        System.out.println("");
+        System.out.println("eg: java LocalizeStrings ~/working/mobeam/beepngo-android/BeepNGo ~/working/mobeam/beepngo-ios/Beepngo");
+        System.exit(0);
+    }
+
+    // ----------------------------------------------------------------------------
+
+    /**
+     * --watch: wait for changes to Android strings or iOS source files and localize again until stopped. Indexes are kept
+     * in memory so only changed files are read again.
+     */
+    void watch() {
+        WatchService watchService = null;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            // directory for each registered watch key
+            Map<WatchKey, File> dirMap = new HashMap<WatchKey, File>();
+            for (File resDir : mResDirList) {
+                registerDir(watchService, resDir, dirMap);
+                File[] fileArr = resDir.listFiles();
+                if (fileArr != null) {
+                    for (File file : fileArr) {
+                        if (isValuesDir(file)) {
+                            registerDir(watchService, file, dirMap);
+                        }
+                    }
+                }
+            }
+            registerSourceDirs(watchService, iosRoot, dirMap, null);
+
+            mOut.println("Watching for changes (ctrl-c to stop)...");
+            while (true) {
+                Set<File> changedStringsSet = new TreeSet<File>();
+                Set<File> changedSourceSet = new TreeSet<File>();
+
+                // wait for a change, then keep collecting until nothing changes for WATCH_DELAY_MS
+                // - saving several files or switching branches is handled once
+                WatchKey watchKey = watchService.take();
+                while (watchKey != null) {
+                    File dir = dirMap.get(watchKey);
+                    for (WatchEvent<?> event : watchKey.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            // events were lost; read everything again
+                            mParsedFileMap.clear();
+                            changedStringsSet.addAll(mResDirList);
+                            changedSourceSet.add(iosRoot);
+                            continue;
+                        }
+                        File file = new File(dir, event.context().toString());
+                        onFileChanged(watchService, dirMap, file, changedStringsSet, changedSourceSet);
+                    }
+                    if (!watchKey.reset()) {
+                        // directory was deleted
+                        dirMap.remove(watchKey);
+                    }
+                    watchKey = watchService.poll(WATCH_DELAY_MS, TimeUnit.MILLISECONDS);
+                }
+
+                if (!changedStringsSet.isEmpty() || !changedSourceSet.isEmpty()) {
+                    update(changedStringsSet, changedSourceSet);
+                }
+            }
+        } catch (InterruptedException e) {
+            // stopped
+        } catch (IOException e) {
+            mOut.println("Error watching for changes: " + e.getMessage());
+        } finally {
+            if (watchService != null) {
+                try {
+                    watchService.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+
+    private static boolean isValuesDir(File file) {
+        return file.isDirectory() && file.getName().startsWith("values");
+    }
+
+    private static void registerDir(WatchService watchService, File dir, Map<WatchKey, File> dirMap) throws IOException {
+        WatchKey watchKey = dir.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+            StandardWatchEventKinds.ENTRY_MODIFY);
+        dirMap.put(watchKey, dir);
+    }
+
+    // register dir and every directory under it which is searched; files found are added to sourceSet (if not null)
+    private void registerSourceDirs(WatchService watchService, File dir, Map<WatchKey, File> dirMap, Set<File> sourceSet) throws IOException {
+        List<File> dirList = new ArrayList<File>();
+        List<File> fileList = mPathFilter.findFiles(dir, dirList);
+        for (File subDir : dirList) {
+            registerDir(watchService, subDir, dirMap);
+        }
+        if (sourceSet != null) {
+            sourceSet.addAll(fileList);
+        }
+    }
+
+    private void onFileChanged(WatchService watchService, Map<WatchKey, File> dirMap, File file, Set<File> changedStringsSet,
+        Set<File> changedSourceSet) throws IOException {
+        File dir = file.getParentFile();
+        if (mResDirList.contains(dir)) {
+            if (isValuesDir(file)) {
+                // new values*/ directory
+                registerDir(watchService, file, dirMap);
+                changedStringsSet.add(file);
+            } else if (file.getName().startsWith("values")) {
+                // deleted values*/ directory; forget strings read from it
+                Iterator<File> it = mParsedFileMap.keySet().iterator();
+                while (it.hasNext()) {
+                    if (it.next().getParentFile().equals(file)) {
+                        it.remove();
+                    }
+                }
+                changedStringsSet.add(file);
+            }
+        } else if (mResDirList.contains(dir.getParentFile())) {
+            if (file.getName().startsWith("strings")) {
+                changedStringsSet.add(file);
+            }
+        } else if (file.isDirectory()) {
+            // new directory in iOS project
+            if (!mPathFilter.isExcludedDir(file)) {
+                registerSourceDirs(watchService, file, dirMap, changedSourceSet);
+            }
+        } else if (mPathFilter.isIncludedFile(file)) {
+            changedSourceSet.add(file);
+        }
+    }
+
+    // localize again after files changed; only changed files are read
+    private void update(Set<File> changedStringsSet, Set<File> changedSourceSet) {
+        long numLocalized = mMetrics.get(Metrics.Counter.STRINGS_LOCALIZED);
+
+        // Localizable.strings files may have been edited since last time
+        mLocalizedFileMap.clear();
+
+        mValuesChanged = false;
+        mStringsChanged = false;
+        if (!changedStringsSet.isEmpty()) {
+            mOut.println("Indexing strings...");
+            mMetrics.start(Metrics.Phase.INDEX);
+            for (File file : changedStringsSet) {
+                mParsedFileMap.remove(file);
+            }
+            Map<String, String> oldValueKeyMap = new HashMap<String, String>(mValueKeyMap);
+            StringTable oldTable = mStringTable;
+            mStringTable = new StringTable();
+            mPluralMap.clear();
+            List<File> stringsFileList = findStringsFiles();
+            if (mCache != null) {
+                mSnapshot = createSnapshot(stringsFileList);
+            }
+            indexStrings(stringsFileList);
+            indexValues();
+            mValuesChanged = !mValueKeyMap.equals(oldValueKeyMap);
+            mStringsChanged = true;
+            if (mCache != null) {
+                mCache.setValuesHash(hashValues(mValueKeyMap, mNormalizedIndex != null));
+                mCache.setStringsHash(hashStrings(mStringTable, mPluralMap));
+            }
+            mMetrics.stop(Metrics.Phase.INDEX);
+
+            updateChangedStrings(oldTable);
+        }
+
+        mMetrics.start(Metrics.Phase.SCAN);
+        if (mValuesChanged || changedSourceSet.contains(iosRoot)) {
+            // any file could have a new English value
+            searchDirForUse(iosRoot);
+        } else {
+            List<File> fileList = new ArrayList<File>();
+            for (File file : changedSourceSet) {
+                if (file.exists()) {
+                    // skipped if it's unchanged (ie: file was just localized) with --incremental
+                    fileList.add(file);
+                }
+            }
+            searchFiles(fileList);
+        }
+        mMetrics.stop(Metrics.Phase.SCAN);
+        mOut.println("Localized " + (mMetrics.get(Metrics.Counter.STRINGS_LOCALIZED) - numLocalized) + " strings");
+
+        mMetrics.start(Metrics.Phase.FILL);
+        if (mStringsChanged) {
+            addRemainingStrings();
+        }
+        mMetrics.stop(Metrics.Phase.FILL);
+
+        mMetrics.start(Metrics.Phase.WRITE);
+        writeLocalizedFiles();
+        writePluralFiles();
+        writeCache();
+        mMetrics.stop(Metrics.Phase.WRITE);
+    }
+
+    // --watch: replace lines in Localizable.strings for strings with a different value than before
+    // - new strings are added by addRemainingStrings(); removed strings are left alone
+    private void updateChangedStrings(StringTable oldTable) {
+        Iterator<String> it = mStringTable.getLanguages().iterator();
+        while (it.hasNext()) {
+            String langCode = it.next();
+            for (int keyId = 0; keyId < mStringTable.getNumKeys(); keyId++) {
+                String key = mStringTable.getKey(keyId);
+                String value = mStringTable.get(langCode, keyId);
+                boolean isTranslated = value != null;
+                if (!isTranslated && !mStringTable.isTranslatable(keyId)) {
+                    // translatable="false" strings are only added for languages which have them
+                    continue;
+                } else if (!isTranslated) {
+                    // untranslated strings use English version
+                    value = mStringTable.get(DEFAULT_LANGUAGE, keyId);
+                }
+                String oldValue = oldTable.get(langCode, key);
+                if (oldValue == null) {
+                    oldValue = oldTable.get(DEFAULT_LANGUAGE, key);
+                }
+                if (value == null || oldValue == null || value.equals(oldValue)) {
+                    continue;
+                }
+
+                LocalizedStringsFile localizedFile = getLocalizedFile(langCode);
+                if (localizedFile != null && localizedFile.getLine(key) != null) {
+                    localizedFile.putLine(key, formatLine(langCode, key, value, isTranslated));
+                    mOut.println("updated (" + langCode + "): " + key);
+                }
+            }
+        }
+    }
+
+    // ----------------------------------------------------------------------------
+
+    // read strings*.xml files in parallel, then add them to the index in file order on this thread so key ids and
+    // which string wins when the same key is in more than one res/ directory are the same for any # of threads
+    private List<ParsedFile> indexStrings(List<File> stringsFileList) {
+        List<ParsedFile> parsedList = invokeTask(new ParseTask(stringsFileList, 0, stringsFileList.size()));
+        for (ParsedFile parsed : parsedList) {
+            for (String logLine : parsed.logList) {
+                mOut.println(logLine);
+            }
+            if (mParsedFileMap != null) {
+                mParsedFileMap.put(parsed.file, parsed);
+            }
+            mStringTable.addLanguage(parsed.langCode);
+            mStringTable.putAll(parsed.langCode, parsed.stringMap);
+            for (String key : parsed.untranslatableSet) {
+                mStringTable.setUntranslatable(key);
+            }
+            if (!parsed.pluralMap.isEmpty()) {
+                Map<String, Map<String, String>> langPluralMap = mPluralMap.get(parsed.langCode);
+                if (langPluralMap == null) {
+                    langPluralMap = new TreeMap<String, Map<String, String>>();
+                    mPluralMap.put(parsed.langCode, langPluralMap);
+                }
+                langPluralMap.putAll(parsed.pluralMap);
+            }
+        }
+        return parsedList;
+    }
+
+    /**
+     * find res/ directories of every module under androidRoot in override order: library modules first and app modules
+     * last, so an app's strings replace library strings with the same name. In each module, res/ (Eclipse layout) is
+     * followed by src/main/res and then src/&lt;flavor&gt;/res for each flavor (in flavorList order).
+     */
+    private static List<File> findResDirs(File androidRoot, List<String> flavorList) {
+        List<File> moduleList = new ArrayList<File>();
+        addModules(androidRoot, 0, moduleList);
+
+        List<File> resDirList = new ArrayList<File>();
+        List<File> appList = new ArrayList<File>();
+        for (File module : moduleList) {
+            if (isAppModule(module)) {
+                appList.add(module);
+            } else {
+                addResDirs(module, flavorList, resDirList);
+            }
+        }
+        for (File module : appList) {
+            addResDirs(module, flavorList, resDirList);
+        }
+        return resDirList;
+    }
+
+    // directories with a build.gradle or AndroidManifest.xml file (dir and up to MAX_MODULE_DEPTH levels under it)
+    private static void addModules(File dir, int depth, List<File> moduleList) {
+        if (getBuildFile(dir) != null || new File(dir, "AndroidManifest.xml").exists()) {
+            moduleList.add(dir);
+        }
+        File[] fileArr = dir.listFiles();
+        if (fileArr == null || depth == MAX_MODULE_DEPTH) {
+            return;
+        }
+        Arrays.sort(fileArr);
+        for (File file : fileArr) {
+            String filename = file.getName();
+            // build output, source sets and resources don't have modules in them
+            if (file.isDirectory() && !filename.startsWith(".") && !filename.equals("build") && !filename.equals("src")
+                && !filename.equals("res")) {
+                addModules(file, depth + 1, moduleList);
+            }
+        }
+    }
+
+    private static File getBuildFile(File module) {
+        for (String filename : new String[] { "build.gradle", "build.gradle.kts" }) {
+            File file = new File(module, filename);
+            if (file.exists()) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    // app module: uses com.android.application plugin (Gradle) or isn't marked as a library in project.properties (Eclipse)
+    private static boolean isAppModule(File module) {
+        File buildFile = getBuildFile(module);
+        if (buildFile != null) {
+            // apply plugin: 'com.android.application', id("com.android.application") or alias(libs.plugins.android.application)
+            return readText(buildFile).contains("android.application");
+        }
+        return !readText(new File(module, "project.properties")).contains("android.library=true");
+    }
+
+    // contents of a small project file or "" if it can't be read
+    private static String readText(File file) {
+        try {
+            return new String(Files.readAllBytes(file.toPath()), "UTF-8");
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    private static void addResDirs(File module, List<String> flavorList, List<File> resDirList) {
+        List<File> dirList = new ArrayList<File>();
+        dirList.add(new File(module, "res"));
+        dirList.add(new File(module, "src/main/res"));
+        for (String flavor : flavorList) {
+            dirList.add(new File(module, "src/" + flavor + "/res"));
+        }
+        for (File dir : dirList) {
+            if (dir.isDirectory()) {
+                resDirList.add(dir);
+            }
+        }
+    }
+
+    // strings*.xml files in values*/ directories of each res/ directory (in override order); each directory is sorted so
+    // keys get the same ids every run ("values" is read before "values-es")
+    private List<File> findStringsFiles() {
+        List<File> fileList = new ArrayList<File>();
+        for (File resDir : mResDirList) {
+            addStringsFiles(resDir, fileList);
+        }
+        return fileList;
+    }
+
+    private static void addStringsFiles(File dir, List<File> fileList) {
+        File[] fileArr = dir.listFiles();
+        if (fileArr == null) {
+            // deleted while watching
+            return;
+        }
+        Arrays.sort(fileArr);
+        for (File file : fileArr) {
+            String filename = file.getName();
+            if (file.isDirectory() && filename.startsWith("values")) {
+                addStringsFiles(file, fileList);
+            } else if (!file.isDirectory() && filename.startsWith("strings")) {
+                fileList.add(file);
+            }
+        }
+    }
+
+    // strings and plurals read from a single strings.xml file
+    private static class ParsedFile {
+        File file;
+        String langCode;
+        Map<String, String> stringMap;
+        // key -> quantity -> value
+        Map<String, Map<String, String>> pluralMap;
+        // keys marked translatable="false"
+        Set<String> untranslatableSet;
+        // messages to print once file is added to the index
+        final List<String> logList = new ArrayList<String>();
+    }
+
+    // reads fileList[start, end); splits in half until there's a single file
+    private class ParseTask extends RecursiveTask<List<ParsedFile>> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<File> mFileList;
+        private final int mStart;
+        private final int mEnd;
+
+        ParseTask(List<File> fileList, int start, int end) {
+            mFileList = fileList;
+            mStart = start;
+            mEnd = end;
+        }
+
+        @Override
+        protected List<ParsedFile> compute() {
+            List<ParsedFile> parsedList = new ArrayList<ParsedFile>();
+            if (mEnd - mStart <= 1) {
+                if (mEnd > mStart) {
+                    parsedList.add(readStrings(mFileList.get(mStart)));
+                }
+                return parsedList;
+            }
+
+            int mid = (mStart + mEnd) >>> 1;
+            ParseTask first = new ParseTask(mFileList, mStart, mid);
+            ParseTask second = new ParseTask(mFileList, mid, mEnd);
+            second.fork();
+            parsedList.addAll(first.compute());
+            // keep file order
+            parsedList.addAll(second.join());
+            return parsedList;
+        }
+    }
+
+    // read strings from file (or reuse the ones read before with --watch); called from ParseTask threads
+    private ParsedFile readStrings(File file) {
+        ParsedFile parsed = new ParsedFile();
+        parsed.file = file;
+        parsed.langCode = getLanguageCodeFromDir(file.getParentFile());
+        ParsedFile oldParsed = mParsedFileMap != null ? mParsedFileMap.get(file) : null;
+        if (oldParsed != null) {
+            parsed.stringMap = oldParsed.stringMap;
+            parsed.pluralMap = oldParsed.pluralMap;
+            parsed.untranslatableSet = oldParsed.untranslatableSet;
+            return parsed;
+        }
+        parsed.stringMap = new LinkedHashMap<String, String>();
+        parsed.pluralMap = new LinkedHashMap<String, Map<String, String>>();
+        parsed.untranslatableSet = new TreeSet<String>();
+        readFileContents(file, parsed.stringMap, parsed.pluralMap, parsed.untranslatableSet, parsed.langCode, parsed.logList);
+        return parsed;
+    }
+
+    // hash of every language/key/value (and plural) so changes since last run can be detected
+    private static String hashStrings(StringTable stringTable, Map<String, Map<String, Map<String, String>>> pluralMap) {
+        // keys in sorted order
+        Map<String, Integer> keyIdMap = new TreeMap<String, Integer>();
+        for (int keyId = 0; keyId < stringTable.getNumKeys(); keyId++) {
+            keyIdMap.put(stringTable.getKey(keyId), keyId);
+        }
+
+        MessageDigest digest = FingerprintCache.createDigest();
+        Iterator<String> langIt = stringTable.getLanguages().iterator();
+        while (langIt.hasNext()) {
+            String langCode = langIt.next();
+            updateDigest(digest, langCode);
+            Iterator<Map.Entry<String, Integer>> it = keyIdMap.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Integer> entry = it.next();
+                String value = stringTable.get(langCode, entry.getValue());
+                if (value != null) {
+                    updateDigest(digest, entry.getKey());
+                    updateDigest(digest, value);
+                }
+            }
+        }
+
+        // translatable="false" keys
+        updateDigest(digest, "untranslatable");
+        Iterator<Map.Entry<String, Integer>> keyIt = keyIdMap.entrySet().iterator();
+        while (keyIt.hasNext()) {
+            Map.Entry<String, Integer> entry = keyIt.next();
+            if (!stringTable.isTranslatable(entry.getValue())) {
+                updateDigest(digest, entry.getKey());
+            }
+        }
+
+        // plurals are already sorted by language and key
+        for (Map.Entry<String, Map<String, Map<String, String>>> langEntry : pluralMap.entrySet()) {
+            updateDigest(digest, langEntry.getKey());
+            for (Map.Entry<String, Map<String, String>> entry : langEntry.getValue().entrySet()) {
+                updateDigest(digest, entry.getKey());
+                for (Map.Entry<String, String> quantityEntry : entry.getValue().entrySet()) {
+                    updateDigest(digest, quantityEntry.getKey());
+                    updateDigest(digest, quantityEntry.getValue());
+                }
+            }
+        }
+        return FingerprintCache.toHex(digest.digest());
+    }
+
+    // hash of English value -> key lookup; files are matched differently with --normalize so it's part of the hash too
+    private static String hashValues(Map<String, String> valueKeyMap, boolean isNormalize) {
+        MessageDigest digest = FingerprintCache.createDigest();
+        updateDigest(digest, DEFAULT_LANGUAGE);
+        if (isNormalize) {
+            updateDigest(digest, "normalize");
+        }
+        Iterator<String> it = new TreeSet<String>(valueKeyMap.keySet()).iterator();
+        while (it.hasNext()) {
+            String value = it.next();
+            updateDigest(digest, value);
+            updateDigest(digest, valueKeyMap.get(value));
+        }
+        return FingerprintCache.toHex(digest.digest());
+    }
+
+    // add string and a 0 separator to digest
+    private static void updateDigest(MessageDigest digest, String str) {
+        try {
+            digest.update(str.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new IllegalStateException(e);
+        }
+        digest.update((byte) 0);
+    }
+
+    private void indexValues() {
+        mValueKeyMap.clear();
+        mDuplicateList = new ArrayList<String>();
+        mValueMatcher = null;
+        if (!mStringTable.getLanguages().contains(DEFAULT_LANGUAGE)) {
+            return;
+        }
+
+        // values which are used by more than 1 key; value -> all keys
+        Map<String, Set<String>> duplicateMap = new TreeMap<String, Set<String>>();
+
+        BitSet englishKeyIds = mStringTable.getKeyIds(DEFAULT_LANGUAGE);
+        for (int keyId = englishKeyIds.nextSetBit(0); keyId >= 0; keyId = englishKeyIds.nextSetBit(keyId + 1)) {
+            String key = mStringTable.getKey(keyId);
+            String value = mStringTable.get(DEFAULT_LANGUAGE, keyId);
+            String existingKey = mValueKeyMap.get(value);
+            if (existingKey == null) {
+                mValueKeyMap.put(value, key);
+                continue;
+            }
 
-        // print out # of strings found for each language
-        Iterator<String> it = mLangMap.keySet().iterator();
-        while (it.hasNext()) {
-            String key = it.next();
-            Map<String, String> valueMap = mLangMap.get(key);
-            if (valueMap.size() > 0) {
-                System.out.println("language:" + key + ", strings:" + valueMap.size());
+            Set<String> keySet = duplicateMap.get(value);
+            if (keySet == null) {
+                keySet = new TreeSet<String>();
+                keySet.add(existingKey);
+                duplicateMap.put(value, keySet);
+            }
+            keySet.add(key);
+            // always use the same key (first alphabetically) no matter what order the map is in
+            if (key.compareTo(existingKey) < 0) {
+                mValueKeyMap.put(value, key);
             }
         }
 
-        // find and replace all .m files in iOS directory which have a string-value match
-        searchDirForUse(iosRoot);
+        // log values which map to more than 1 key so they can be cleaned up
+        Iterator<String> it = duplicateMap.keySet().iterator();
+        while (it.hasNext()) {
+            String value = it.next();
+            mDuplicateList.add("duplicate value: \"" + value + "\", keys: " + duplicateMap.get(value) + ", using: " + mValueKeyMap.get(value));
+        }
+        for (String line : mDuplicateList) {
+            mOut.println(line);
+        }
 
-        System.out.println("Localized " + mNumLocalizedStrings + " strings");
+        buildValueMatcher();
+    }
 
-        // add remaining strings to iOS localized file even if they're not used
-        Map<String, String> englishMap = mLangMap.get(DEFAULT_LANGUAGE);
-        if (englishMap != null) {
-            it = englishMap.keySet().iterator();
-            while (it.hasNext()) {
-                String key = it.next();
-                String value = englishMap.get(key);
-                addLocalizedString(key, value);
+    // build matcher for values which can appear in an iOS string: @"<value>"
+    private void buildValueMatcher() {
+        mValueMatcher = null;
+        if (!mStringTable.getLanguages().contains(DEFAULT_LANGUAGE)) {
+            return;
+        }
+        mValueMatcher = new StringTrie();
+        List<String> keyList = new ArrayList<String>();
+        Iterator<String> it = mValueKeyMap.keySet().iterator();
+        while (it.hasNext()) {
+            String value = it.next();
+            // ignore very short and unusual iOS strings: @"%s"
+            if (value.length() <= 1 || value.equals("%s")) {
+                continue;
+            } else if (!isStringSafe(value)) {
+                // can't be part of an iOS string
+                continue;
             }
-
-            // next, find any untranslated strings (ie: in English but not other translations) and add these
-            // print out # of strings found for each language
-            it = mLangMap.keySet().iterator();
-            while (it.hasNext()) {
-                String key = it.next();
-                if (key.equals(DEFAULT_LANGUAGE)) {
-                    continue;
-                }
-                // key = non-English key-value maps
-                Map<String, String> otherLangMap = mLangMap.get(key);
-                // find difference in keys
-                Set<String> englishKeySet = new HashSet<String>(englishMap.keySet());
-                Set<String> otherLangKeySet = new HashSet<String>(otherLangMap.keySet());
-                englishKeySet.removeAll(otherLangKeySet);
-
-                // for each missing key - add English version to translation file
-                Iterator<String> missingIt = englishKeySet.iterator();
-                while (missingIt.hasNext()) {
-                    String missingKey = missingIt.next();
-                    String englishString = englishMap.get(missingKey);
-                    addLocalizedStringForLanguage(key, missingKey, englishString, false);
-                }
+            int patternId = mValueMatcher.add(value);
+            if (patternId == keyList.size()) {
+                keyList.add(mValueKeyMap.get(value));
             }
         }
+        mValueMatcherKeys = keyList.toArray(new String[keyList.size()]);
 
+        if (mNormalizedIndex != null) {
+            // values which can't be in an iOS string as-is (ie: multi-line) are included; escapes are normalized
+            mNormalizedIndex.clear();
+            for (Map.Entry<String, String> entry : mValueKeyMap.entrySet()) {
+                mNormalizedIndex.add(entry.getKey(), entry.getValue());
+            }
+        }
     }
 
-    private static void indexStrings(File dir) {
-        File[] fileArr = dir.listFiles();
-        for (File file : fileArr) {
-            String filename = file.getName();
-            if (file.isDirectory() && filename.startsWith("values")) {
-                indexStrings(file);
-            } else if (!file.isDirectory() && filename.startsWith("strings")) {
-                String langCode = getLanguageCodeFromDir(dir);
-                Map<String, String> stringMap = mLangMap.get(langCode);
-                if (stringMap == null) {
-                    // first time - add language code and string map
-                    stringMap = new HashMap<String, String>();
-                    mLangMap.put(langCode, stringMap);
-                }
-                readFileContents(file, stringMap, langCode);
+    // check if value could appear as-is in a single-line iOS string; quotes must be escaped: \"
+    private static boolean isStringSafe(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\n' || c == '\r') {
+                return false;
+            } else if (c == '"' && (i == 0 || value.charAt(i - 1) != '\\')) {
+                return false;
             }
         }
+        return true;
     }
 
     private static String getLanguageCodeFromDir(File dir) {
@@ -151,434 +1599,892 @@ public class LocalizeStrings {
         }
     }
 
-    private static void readFileContents(File file, Map<String, String> stringMap, String langCode) {
-        BufferedReader br = null;
-        String beginTag = createBeginTag(USE_STRING);
-        String endTag = createEndTag(USE_STRING);
-        try {
-            br = new BufferedReader(new FileReader(file));
-            while (true) {
-                String line = br.readLine();
-                if (line == null) {
-                    break;
-                }
-
-                // <string name="network_error">Network Error</string>
+    // Android values*/ directory for a language code; opposite of getLanguageCodeFromDir()
+    // - returns null if it isn't a language code Android uses: es, pt-rBR, b+sr+Latn (not Base)
+    private static String getDirFromLanguageCode(String langCode) {
+        if (langCode.equals(DEFAULT_LANGUAGE)) {
+            return "values";
+        } else if (langCode.equals("zh-Hans")) {
+            return "values-zh-rCN";
+        } else if (langCode.equals("zh-Hant")) {
+            return "values-zh-rTW";
+        } else if (!langCode.matches("[a-z]{2,3}(-r[A-Z]{2})?|b\\+[a-zA-Z0-9+]+")) {
+            return null;
+        }
+        return "values-" + langCode;
+    }
 
-                // find: <string name="
-                int stPos = line.indexOf(beginTag);
-                if (stPos < 0) {
-                    continue;
-                }
-                // find: ">
-                int endPos = line.indexOf("\">", stPos);
-                if (endPos <= 0) {
+    /**
+     * read strings, plurals and string arrays from a strings.xml file. String array items are added to stringMap as
+     * key_0, key_1, .. so they're localized like any other string.
+     *
+     * @param pluralMap         key -> quantity ("one", "other") -> value
+     * @param untranslatableSet keys of strings (and string array items) marked translatable="false" are added here
+     * @param logList           messages to print are added here (file may be read on any thread)
+     */
+    private void readFileContents(File file, Map<String, String> stringMap, Map<String, Map<String, String>> pluralMap,
+        Set<String> untranslatableSet, String langCode, List<String> logList) {
+        InputStream in = null;
+        XMLStreamReader reader = null;
+        try {
+            // stream through file so memory use doesn't depend on file size
+            in = new BufferedInputStream(new FileInputStream(file));
+            mMetrics.increment(Metrics.Counter.FILES_READ);
+            mMetrics.add(Metrics.Counter.BYTES_READ, file.length());
+            reader = mXmlInputFactory.get().createXMLStreamReader(in);
+            while (reader.hasNext()) {
+                if (reader.next() != XMLStreamConstants.START_ELEMENT) {
                     continue;
                 }
 
-                // get key (network_error)
-                String key = line.substring(stPos + beginTag.length(), endPos);
-
-                // find: </string>
-                stPos = endPos + 2; // move start position to value (past ">)
-                endPos = line.indexOf(endTag, stPos);
-                if (endPos < 0) {
-                    continue;
-                }
+                String tagName = reader.getLocalName();
+                if (tagName.equals(USE_STRING)) {
+                    // <string name="network_error">Network Error</string>
+                    String key = reader.getAttributeValue(null, "name");
+                    boolean isTranslatable = !"false".equals(reader.getAttributeValue(null, "translatable"));
+                    String value = readElementText(reader);
+                    if (key == null) {
+                        continue;
+                    }
 
-                // get value (Network Error)
-                String value = line.substring(stPos, endPos);
+                    // log any odd/strange translation values
+                    // ...em \""\""Recomendados\""\""</string>
+                    if (value.indexOf("\\\"\"\\\"\"") >= 0) {
+                        logList.add("questionable translation (" + langCode + "): " + value);
+                    }
 
-                // log any odd/strange translation values
-                // ...em \""\""Recomendados\""\""</string>
-                if (value.indexOf("\\\"\"\\\"\"") >= 0) {
-                    System.out.println("questionable translation (" + langCode + "): " + value);
+                    // add key/value to map
+                    stringMap.put(key, value);
+                    if (!isTranslatable) {
+                        // <string name="app_name" translatable="false">MyApp</string>
+                        untranslatableSet.add(key);
+                    }
+                } else if (tagName.equals(USE_PLURALS)) {
+                    // <plurals name="songs"><item quantity="one">%d song</item>..</plurals>
+                    String key = reader.getAttributeValue(null, "name");
+                    Map<String, String> quantityMap = readItems(reader, "quantity");
+                    if (key != null && !quantityMap.isEmpty()) {
+                        pluralMap.put(key, quantityMap);
+                    }
+                } else if (tagName.equals(USE_ARRAY)) {
+                    // <string-array name="planets"><item>Mercury</item>..</string-array>
+                    String key = reader.getAttributeValue(null, "name");
+                    boolean isTranslatable = !"false".equals(reader.getAttributeValue(null, "translatable"));
+                    Map<String, String> itemMap = readItems(reader, null);
+                    if (key == null) {
+                        continue;
+                    }
+                    for (Map.Entry<String, String> entry : itemMap.entrySet()) {
+                        // items which reference another resource (@string/mercury) have no text of their own
+                        if (!entry.getValue().startsWith("@")) {
+                            stringMap.put(key + "_" + entry.getKey(), entry.getValue());
+                            if (!isTranslatable) {
+                                untranslatableSet.add(key + "_" + entry.getKey());
+                            }
+                            if (mArrayKeySet != null) {
+                                mArrayKeySet.add(key + "_" + entry.getKey());
+                            }
+                        }
+                    }
                 }
-
-                // add key/value to map
-                stringMap.put(key, value);
             }
         } catch (Exception e) {
-            System.out.println("readFileContents: Error reading file: " + file + ", " + e.getMessage());
-            e.printStackTrace();
+            logList.add("readFileContents: Error reading file: " + file + ", " + e.getMessage());
+            logList.add(getStackTrace(e));
         } finally {
-            if (br != null) {
+            if (reader != null) {
                 try {
-                    br.close();
+                    reader.close();
+                } catch (XMLStreamException e) {
+                }
+            }
+            if (in != null) {
+                try {
+                    in.close();
                 } catch (IOException e) {
                 }
             }
         }
     }
 
-    private static String createBeginTag(String key) {
-        return "<" + key + " name=\"";
-    }
-
-    private static String createEndTag(String key) {
-        return "</" + key + ">";
+    // factories aren't thread safe; each thread reading strings.xml files has its own
+    private static final ThreadLocal<XMLInputFactory> mXmlInputFactory = new ThreadLocal<XMLInputFactory>() {
+        @Override
+        protected XMLInputFactory initialValue() {
+            return createXmlInputFactory();
+        }
+    };
+
+    private static XMLInputFactory createXmlInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // CDATA sections are returned as part of the text
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        // don't load DTDs or external entities
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        return factory;
     }
 
-    // ----------------------------------------------------------------------------
-
-    private static void searchDirForUse(File dir) {
-        // now, look through all .m files to find matches
-        File[] fileArr = dir.listFiles();
-        for (File file : fileArr) {
-            if (file.isDirectory()) {
-                // ignore "external" directory as this isn't our code..
-                if (!isIgnoredDirectory(file)) {
-                    searchDirForUse(file);
+    // read contents of current element (reader is positioned at START_ELEMENT); leaves reader at matching END_ELEMENT
+    private static String readElementText(XMLStreamReader reader) throws XMLStreamException {
+        StringBuilder sb = new StringBuilder();
+        boolean isMultiLine = false;
+        int depth = 0;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA || event == XMLStreamConstants.SPACE) {
+                int start = sb.length();
+                sb.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                for (int i = start; i < sb.length() && !isMultiLine; i++) {
+                    char c = sb.charAt(i);
+                    isMultiLine = c == '\n' || c == '\r';
                 }
-            } else {
-                String filename = file.getName();
-                if (filename.endsWith(".m") && !isIgnoredFile(filename)) {
-                    searchFileForUse(file);
+            } else if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                // keep formatting tags (<b>, <i>, ..) but not placeholder tags: <xliff:g id="count">%d</xliff:g>
+                if (!XLIFF_PREFIX.equals(reader.getPrefix())) {
+                    sb.append('<').append(reader.getLocalName());
+                    for (int i = 0; i < reader.getAttributeCount(); i++) {
+                        sb.append(' ').append(reader.getAttributeLocalName(i)).append("=\"").append(reader.getAttributeValue(i)).append('"');
+                    }
+                    sb.append('>');
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (depth == 0) {
+                    break;
+                }
+                depth--;
+                if (!XLIFF_PREFIX.equals(reader.getPrefix())) {
+                    sb.append("</").append(reader.getLocalName()).append('>');
                 }
             }
         }
+
+        if (!isMultiLine) {
+            return sb.toString();
+        }
+        // value spans multiple lines; collapse whitespace the same way Android does
+        return collapseWhitespace(sb);
     }
 
-    // check if this directory should be ignored
-    private static boolean isIgnoredDirectory(File dir) {
-        String name = dir.getName();
-        if (!name.equals("external")) {
-            return true;
-        } else {
-            return false;
+    private static String collapseWhitespace(CharSequence value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        boolean isSpace = false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (Character.isWhitespace(c)) {
+                isSpace = true;
+                continue;
+            }
+            if (isSpace && sb.length() > 0) {
+                sb.append(' ');
+            }
+            isSpace = false;
+            sb.append(c);
         }
+        return sb.toString();
     }
 
-    // check if this file should be ignored
-    private static boolean isIgnoredFile(String name) {
-        if (!name.equals("RRSStoryboard.m") && !name.equals("MobeamConstants.m")) {
-            return true;
-        } else {
-            return false;
+    /**
+     * read <item>'s of current <plurals> or <string-array> element; leaves reader at its END_ELEMENT
+     *
+     * @param attrName attribute used as the name of each item or null to use the item's index (0, 1, 2, ..)
+     * @return item name -> value, in file order
+     */
+    private static Map<String, String> readItems(XMLStreamReader reader, String attrName) throws XMLStreamException {
+        Map<String, String> itemMap = new LinkedHashMap<String, String>();
+        int index = 0;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                break;
+            } else if (event != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            } else if (!reader.getLocalName().equals("item")) {
+                skipElement(reader);
+                continue;
+            }
+            String name = attrName != null ? reader.getAttributeValue(null, attrName) : String.valueOf(index);
+            String value = readElementText(reader);
+            index++;
+            if (name != null) {
+                itemMap.put(name, value);
+            }
         }
+        return itemMap;
     }
 
-    private static void searchFileForUse(File file) {
-        boolean hasAnyMatches = false;
-        StringBuffer replaceLines = new StringBuffer();
+    // skip current element and all of its children (reader is positioned at START_ELEMENT)
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 0;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (depth == 0) {
+                    break;
+                }
+                depth--;
+            }
+        }
+    }
 
-        //System.out.println("searching: " + file.getName());
+    // ----------------------------------------------------------------------------
 
-        BufferedReader br = null;
-        BufferedWriter bw = null;
+    // search all files under dir and add their results
+    private void searchDirForUse(File dir) {
+        List<File> fileList;
         try {
-            br = new BufferedReader(new FileReader(file));
-            while (true) {
-                String line = br.readLine();
-                if (line == null) {
-                    // done reading file
-                    break;
-                }
+            fileList = mPathFilter.findFiles(dir, null);
+        } catch (IOException e) {
+            mOut.println("searchDirForUse: Error reading directory: " + dir + ", " + e.getMessage());
+            return;
+        }
+        searchFiles(fileList);
+    }
 
-                // ignore commented out lines or log lines
-                if (line.contains("DDLog") || line.contains("NSLog") || line.trim().startsWith("//")) {
-                    //System.out.println("ignore comments: " + partialLine);
-                    replaceLines.append(line);
-                    replaceLines.append('\n');
-                    continue;
+    /**
+     * search files using mNumThreads threads and add each file's results as soon as it and every file before it are done,
+     * so output is in the same order as a sequential search. Only SEARCH_AHEAD files per thread are searched ahead of the
+     * next file to add, so results waiting to be added (ie: --dry-run diffs) don't grow with the # of files.
+     */
+    private void searchFiles(List<File> fileList) {
+        // --batch: use threads of pool projects are running in
+        ForkJoinPool pool = ForkJoinTask.inForkJoinPool() ? null : new ForkJoinPool(mNumThreads);
+        try {
+            Deque<SearchTask> pendingList = new ArrayDeque<SearchTask>();
+            int maxPending = mNumThreads * SEARCH_AHEAD;
+            int index = 0;
+            while (index < fileList.size() || !pendingList.isEmpty()) {
+                while (index < fileList.size() && pendingList.size() < maxPending) {
+                    SearchTask task = new SearchTask(fileList.get(index++));
+                    if (pool != null) {
+                        pool.execute(task);
+                    } else {
+                        task.fork();
+                    }
+                    pendingList.add(task);
                 }
+                addSearchResult(pendingList.removeFirst().join());
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
 
-                StringBuffer replaceLine = null;
+    // run task using mNumThreads threads
+    private static <T> T invokeTask(RecursiveTask<T> task) {
+        if (ForkJoinTask.inForkJoinPool()) {
+            // --batch: use threads of pool projects are running in
+            return task.invoke();
+        }
+        ForkJoinPool pool = new ForkJoinPool(mNumThreads);
+        try {
+            return pool.invoke(task);
+        } finally {
+            pool.shutdown();
+        }
+    }
 
-                // support multiple strings on a single line
-                // ex: [self createHeaderCellFor:cell withStepNum:@"3" totalSteps:@"OF THREE" description:@"Select card image" backgroundColor:[UIColor bngColor_greenColor]];
-                int linePos = 0;
-                for (int stPos = 0; stPos < line.length();) {
-                    // find hardcoded strings: (eg: self.location.text = @"Nearby";)
-                    stPos = line.indexOf("@\"", stPos);
-                    if (stPos < 0) {
-                        // nothing on this line
-                        break;
-                    }
-                    int endPos = line.indexOf("\"", stPos + 2); // +2 to skip past @"
-                    if (endPos < 0) {
-                        // nothing on this line
-                        break;
-                    }
+    // searches a single file
+    private class SearchTask extends RecursiveTask<SearchResult> {
+        private static final long serialVersionUID = 1L;
 
-                    // make sure this string hasn't already been localized!
-                    // self.location.text = NSLocalizedString(@"Nearby", @"nearby");
-                    String partialLine = line.substring(linePos, endPos);
-                    if (partialLine.contains("NSLocalizedString")) {
-                        //System.out.println("already localized: " + partialLine);
-                        // continue searching on this line
-                        stPos = endPos + 1;
-                        continue;
-                    }
+        private final File mFile;
 
-                    // get string (Nearby)
-                    String value = line.substring(stPos + 2, endPos);
-                    // ignore very short and unusual iOS strings: @"%s"
-                    if (value.length() <= 1 || value.equals("%s")) {
-                        // continue searching on this line
-                        stPos = endPos + 1;
-                        continue;
-                    }
+        SearchTask(File file) {
+            mFile = file;
+        }
 
-                    // check if this string matches English version of Android strings
-                    String androidKey = findKeyForValue(value);
+        @Override
+        protected SearchResult compute() {
+            return searchFile(mFile);
+        }
+    }
 
-                    // can't localize const strings
-                    // static NSString *const DISP_GENDER_MALE = @"Male";
-                    if (partialLine.contains("const") || partialLine.contains("static")) {
-                        if (androidKey != null) {
-                            // log this so we can move string
-                            System.out.println("can't localize static! key: " + androidKey + ", file: " + file.getName() + ", line: " + partialLine);
-                        }
-                        // continue searching on this line
-                        stPos = endPos + 1;
-                        continue;
-                    }
+    // search file unless it (and English strings) are unchanged since last run
+    private SearchResult searchFile(File file) {
+        if (mCache == null) {
+            return searchFileForUse(file);
+        }
 
-                    if (androidKey != null) {
-                        //System.out.println("found key:" + androidKey + ", str:" + value);
-                        mNumLocalizedStrings++;
-                        if (replaceLine == null) {
-                            replaceLine = new StringBuffer();
-                        }
-                        // append start of line up to what we want to replace
-                        // eg: "self.location.text = "
-                        replaceLine.append(line.substring(linePos, stPos));
+        boolean isUnchanged = false;
+        try {
+            isUnchanged = mCache.isUnchanged(file);
+        } catch (IOException e) {
+            mOut.println("searchFile: Error checking file: " + file + ", " + e.getMessage());
+        }
+        // --report lists strings in every file so none can be skipped
+        if (isUnchanged && !mValuesChanged && mReport == null) {
+            mMetrics.increment(Metrics.Counter.FILES_SKIPPED);
+            return new SearchResult();
+        }
+
+        SearchResult result = searchFileForUse(file);
+        if (result.isModified) {
+            try {
+                mCache.update(file);
+            } catch (IOException e) {
+                mOut.println("searchFile: Error checking file: " + file + ", " + e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    // localized strings found in a single file
+    private static class SearchResult {
+        // true if file was rewritten
+        boolean isModified;
+        // --dry-run: changes which would have been made to file; null if there are none
+        String diff;
+        // android keys (in order found) that need to be added to iOS localized files
+        final List<String> keyList = new ArrayList<String>();
+        // messages to print once this file's results are added
+        final List<String> logList = new ArrayList<String>();
+        // --report: strings which weren't localized (formatted by CoverageReport)
+        final List<String> reportList = new ArrayList<String>();
+    }
+
+    private SearchResult searchFileForUse(File file) {
+        SearchResult result = new SearchResult();
 
-                        // create replacement value
-                        replaceLine.append("NSLocalizedString(@\"");
-                        replaceLine.append(androidKey);
-                        replaceLine.append("\", @\"");
-                        replaceLine.append(value);
-                        replaceLine.append("\")");
+        //System.out.println("searching: " + file.getName());
 
-                        addLocalizedString(androidKey, value);
+        StringExtractor.Factory extractorFactory = getExtractorFactory(file.getName());
+        if (extractorFactory == null) {
+            // included by config but not a language we know
+            return result;
+        }
 
-                        linePos = endPos + 1;
+        try {
+            // read entire file (UTF-8)
+            TextFile textFile = TextFile.read(file);
+            mMetrics.increment(Metrics.Counter.FILES_READ);
+            mMetrics.add(Metrics.Counter.BYTES_READ, textFile.getNumBytes());
+            char[] text = textFile.getText();
+            int length = textFile.getLength();
+
+            // updated file contents; only created once a match is found
+            StringBuilder replaceText = null;
+            // position in text which has been copied to replaceText
+            int textPos = 0;
+
+            // --report: path relative to iOS root and line # of linePos; lines are counted as strings are found
+            String reportPath = mReport != null ? iosRoot.toPath().relativize(file.toPath()).toString() : null;
+            int lineNum = 1;
+            int linePos = 0;
+
+            // find hardcoded strings: (eg: self.location.text = @"Nearby";)
+            // - comments, #define's, NSLog(..) and strings which are already localized are skipped by lexer
+            StringExtractor lexer = extractorFactory.create(text, length);
+            while (lexer.nextString()) {
+                int stPos = lexer.getStart();
+                int valuePos = lexer.getValueStart();
+                int endPos = lexer.getEnd();
+
+                // check if this string (Nearby) matches English version of Android strings
+                // - very short and unusual iOS strings (@"%s") are never matched
+                mMetrics.increment(Metrics.Counter.STRINGS_INSPECTED);
+                if (reportPath != null) {
+                    for (; linePos < stPos; linePos++) {
+                        if (text[linePos] == '\n') {
+                            lineNum++;
+                        }
+                    }
+                }
+                String androidKey = findKeyForValue(text, valuePos, endPos);
+                boolean isNearMatch = false;
+                if (androidKey == null && mNormalizedIndex != null) {
+                    // --normalize: same string except for case, whitespace or placeholders
+                    androidKey = mNormalizedIndex.get(CharBuffer.wrap(text, valuePos, endPos - valuePos));
+                    isNearMatch = androidKey != null;
+                }
+                if (androidKey == null) {
+                    if (reportPath != null && endPos > valuePos) {
+                        String value = new String(text, valuePos, endPos - valuePos);
+                        result.reportList.add(mReport.formatString(CoverageReport.UNMATCHED, reportPath, lineNum, null, value));
+                    }
+                    continue;
+                }
+                mMetrics.increment(Metrics.Counter.STRINGS_MATCHED);
+
+                // can't localize const strings
+                // static NSString *const DISP_GENDER_MALE = @"Male";
+                if (lexer.isConst()) {
+                    // log this so we can move string
+                    result.logList.add("can't localize static! key: " + androidKey + ", file: " + file.getName() + ", line: " + getLine(text, length, stPos));
+                    if (reportPath != null) {
+                        String value = new String(text, valuePos, endPos - valuePos);
+                        result.reportList.add(mReport.formatString(CoverageReport.NOT_LOCALIZED, reportPath, lineNum, androidKey, value));
                     }
+                    continue;
+                }
 
-                    // continue searching on this line
-                    stPos = endPos + 1;
+                //System.out.println("found key:" + androidKey + ", str:" + value);
+                mMetrics.increment(Metrics.Counter.STRINGS_LOCALIZED);
+                if (isNearMatch) {
+                    // log every near match so it can be reviewed
+                    mMetrics.increment(Metrics.Counter.STRINGS_NEAR_MATCHED);
+                    result.logList.add("near match: \"" + new String(text, valuePos, endPos - valuePos) + "\" -> key: " + androidKey + " (\""
+                        + mStringTable.get(DEFAULT_LANGUAGE, androidKey) + "\"), file: " + file.getName() + ", line: " + getLine(text, length, stPos));
                 }
+                if (replaceText == null) {
+                    replaceText = new StringBuilder(length + 1024);
+                }
+                // append text up to what we want to replace
+                // eg: "self.location.text = "
+                replaceText.append(text, textPos, stPos - textPos);
 
-                if (replaceLine != null) {
-                    // found at least 1 match.. append remaining portion of line
-                    replaceLine.append(line.substring(linePos));
+                // create replacement value
+                lexer.appendLocalized(replaceText, androidKey, text, valuePos, endPos);
 
-                    // add line to be replaced
-                    replaceLines.append(replaceLine.toString());
+                result.keyList.add(androidKey);
 
-                    hasAnyMatches = true;
-                } else {
-                    // just copy entire line as-is
-                    replaceLines.append(line);
-                }
-                replaceLines.append('\n');
+                textPos = endPos + 1;
             }
 
-            // check if any lines need to be replaced
-            if (hasAnyMatches) {
-                // replace file with updated version
-                bw = new BufferedWriter(new FileWriter(file));
-                bw.write(replaceLines.toString());
-                bw.close();
-            }
-        } catch (Exception e) {
-            System.out.println("searchFileForUse: Error reading file: " + file + ", " + e.getMessage());
-            e.printStackTrace();
-        } finally {
-            if (br != null) {
-                try {
-                    br.close();
-                } catch (IOException e) {
-                }
-            }
-            if (bw != null) {
-                try {
-                    bw.close();
-                } catch (IOException e) {
+            // check if file needs to be replaced
+            if (replaceText != null) {
+                // append remaining portion of file
+                replaceText.append(text, textPos, length - textPos);
+
+                if (mDiffOut != null) {
+                    // only the diff is kept so memory use doesn't depend on the size of the files changed
+                    result.diff = UnifiedDiff.diff(file.getPath(), CharBuffer.wrap(text, 0, length), replaceText);
+                } else {
+                    // replace file with updated version
+                    long numBytes = TextFile.write(file, replaceText, textFile.getCharset());
+                    mMetrics.increment(Metrics.Counter.FILES_REWRITTEN);
+                    mMetrics.add(Metrics.Counter.BYTES_WRITTEN, numBytes);
+                    result.isModified = true;
                 }
             }
+        } catch (Exception e) {
+            result.logList.add("searchFileForUse: Error reading file: " + file + ", " + e.getMessage());
+            result.logList.add(getStackTrace(e));
         }
+        return result;
     }
 
-    // find English value and return matching key
-    private static String findKeyForValue(String englishStr) {
-        Map<String, String> stringMap = mLangMap.get(DEFAULT_LANGUAGE);
-        if (stringMap != null) {
-            Iterator<String> it = stringMap.keySet().iterator();
-            while (it.hasNext()) {
-                String key = it.next();
-                String value = stringMap.get(key);
-                // look for match
-                if (value.equals(englishStr)) {
-                    // found!
-                    return key;
-                }
-            }
+    // stack trace as printed by printStackTrace() (without the last line break) so it can be printed with other messages
+    private static String getStackTrace(Throwable e) {
+        StringWriter writer = new StringWriter();
+        e.printStackTrace(new PrintWriter(writer));
+        return writer.toString().trim();
+    }
+
+    // file extension -> extractor for that language; files are dispatched by extension so all languages are searched in
+    // the same walk
+    private static final Map<String, StringExtractor.Factory> mExtractorMap = new HashMap<String, StringExtractor.Factory>();
+    static {
+        mExtractorMap.put("m", ObjcLexer.FACTORY);
+        mExtractorMap.put("mm", ObjcLexer.FACTORY);
+        mExtractorMap.put("h", ObjcLexer.FACTORY);
+        mExtractorMap.put("swift", SwiftLexer.FACTORY);
+    }
+
+    // null if there's no extractor for this type of file
+    private static StringExtractor.Factory getExtractorFactory(String filename) {
+        int dotPos = filename.lastIndexOf('.');
+        return dotPos >= 0 ? mExtractorMap.get(filename.substring(dotPos + 1)) : null;
+    }
+
+    // get (trimmed) line of text which contains pos
+    private static String getLine(char[] text, int length, int pos) {
+        int start = pos;
+        while (start > 0 && text[start - 1] != '\n') {
+            start--;
         }
-        // not found
-        return null;
+        int end = pos;
+        while (end < length && text[end] != '\n' && text[end] != '\r') {
+            end++;
+        }
+        return new String(text, start, end - start).trim();
+    }
+
+    // find English value in text[start, end) and return matching key (or null if not found) without creating a string
+    private String findKeyForValue(char[] text, int start, int end) {
+        if (mValueMatcher == null) {
+            return null;
+        }
+        int state = StringTrie.ROOT;
+        for (int i = start; i < end && state != StringTrie.NONE; i++) {
+            state = mValueMatcher.goTo(state, text[i]);
+        }
+        if (state == StringTrie.NONE || mValueMatcher.getPattern(state) == StringTrie.NONE) {
+            // not found
+            return null;
+        }
+        return mValueMatcherKeys[mValueMatcher.getPattern(state)];
     }
 
     // add androidKey to iOS strings (all languages)
-    private static void addLocalizedString(String androidKey, String englishValue) {
+    private void addLocalizedString(String androidKey) {
+        int keyId = mStringTable.getKeyId(androidKey);
         // iterate through each language code
-        Iterator<String> it = mLangMap.keySet().iterator();
+        Iterator<String> it = mStringTable.getLanguages().iterator();
         while (it.hasNext()) {
             String langCode = it.next();
-            Map<String, String> stringMap = mLangMap.get(langCode);
-            if (stringMap.containsKey(androidKey)) {
-                // get translated value
-                String localizedValue = stringMap.get(androidKey);
+            // get translated value
+            String localizedValue = mStringTable.get(langCode, keyId);
+            if (localizedValue != null) {
                 // add/update localization file
                 addLocalizedStringForLanguage(langCode, androidKey, localizedValue, true);
             }
         }
     }
 
-    private static void addLocalizedStringForLanguage(String langCode, String androidKey, String localizedValue, boolean isTranslated) {
-        File localizedDir = new File(iosRoot, "resources/" + langCode + ".lproj");
-        if (!localizedDir.exists()) {
-            localizedDir.mkdir();
+    private void addLocalizedStringForLanguage(String langCode, String androidKey, String localizedValue, boolean isTranslated) {
+        LocalizedStringsFile localizedFile = getLocalizedFile(langCode);
+        if (localizedFile == null) {
+            return;
         }
 
-        File localizedFile = new File(localizedDir, "Localizable.strings");
-        if (!localizedFile.exists()) {
-            try {
-                localizedFile.createNewFile();
-            } catch (IOException e) {
-                e.printStackTrace();
-                System.out.println("ERROR creating file:" + localizedFile);
+        String line = localizedFile.getLine(androidKey);
+        if (line != null) {
+            if (!isTranslated || !line.contains(TRANSLATE_TO)) {
+                //System.out.println("key already exists: " + key);
+                // nothing to do!
                 return;
             }
+            // replace this untranslated line with translated version
         }
 
-        StringBuffer replaceLines = new StringBuffer();
+        // add new key/value
+        localizedFile.putLine(androidKey, formatLine(langCode, androidKey, localizedValue, isTranslated));
+        mMetrics.addKey(langCode);
+    }
 
-        BufferedReader br = null;
-        BufferedWriter bw = null;
-        try {
-            br = new BufferedReader(new FileReader(localizedFile));
-            while (true) {
-                String line = br.readLine();
-                if (line == null) {
-                    // done reading file
-                    break;
-                }
+    // "key" = "value"; (with a TRANSLATE TO comment if value is the English version)
+    private static String formatLine(String langCode, String androidKey, String localizedValue, boolean isTranslated) {
+        String formattedValue = fixLocalizedString(localizedValue);
+        String line = "\"" + androidKey + "\" = \"" + formattedValue + "\";";
+        if (!isTranslated) {
+            line += " // " + TRANSLATE_TO + langCode;
+        }
+        return line;
+    }
 
-                boolean skipLine = false;
-
-                // look for key
-                // format: "<key>" = "<value>"
-                // get key
-                int stPos = line.indexOf("\"");
-                if (stPos >= 0) {
-                    int endPos = line.indexOf("\"", stPos + 1);
-                    if (endPos > 0) {
-                        String key = line.substring(stPos + 1, endPos);
-                        if (key.equals(androidKey)) {
-                            if (isTranslated && line.contains(TRANSLATE_TO)) {
-                                // ignore this untranslated line and use translated version instead
-                                skipLine = true;
-                            } else {
-                                //System.out.println("key already exists: " + key);
-                                // nothing to do!
-                                return;
-                            }
-                        }
-                    }
+    // get Localizable.strings for language; read once and kept in memory until writeLocalizedFiles()
+    private LocalizedStringsFile getLocalizedFile(String langCode) {
+        LocalizedStringsFile localizedFile = mLocalizedFileMap.get(langCode);
+        if (localizedFile == null) {
+            File localizedDir = new File(iosRoot, "resources/" + langCode + ".lproj");
+            localizedFile = new LocalizedStringsFile(new File(localizedDir, "Localizable.strings"));
+            try {
+                long numBytes = localizedFile.read();
+                if (numBytes >= 0) {
+                    mMetrics.increment(Metrics.Counter.FILES_READ);
+                    mMetrics.add(Metrics.Counter.BYTES_READ, numBytes);
                 }
+            } catch (IOException e) {
+                mOut.println("addLocalizedString: Error reading file: " + localizedFile.getFile() + ", " + e.getMessage());
+                e.printStackTrace(mOut);
+                return null;
+            }
+            mLocalizedFileMap.put(langCode, localizedFile);
+        }
+        return localizedFile;
+    }
 
-                if (!skipLine) {
-                    // copy line as-is
-                    replaceLines.append(line);
-                    replaceLines.append('\n');
+    // write each modified Localizable.strings file
+    private void writeLocalizedFiles() {
+        Iterator<String> it = mLocalizedFileMap.keySet().iterator();
+        while (it.hasNext()) {
+            LocalizedStringsFile localizedFile = mLocalizedFileMap.get(it.next());
+            if (!localizedFile.isModified()) {
+                continue;
+            }
+            try {
+                if (mDiffOut != null) {
+                    printDiff(localizedFile.getFile(), localizedFile.getText());
+                    continue;
                 }
+                long numBytes = localizedFile.write();
+                mMetrics.increment(Metrics.Counter.FILES_REWRITTEN);
+                mMetrics.add(Metrics.Counter.BYTES_WRITTEN, numBytes);
+            } catch (IOException e) {
+                mOut.println("ERROR writing file:" + localizedFile.getFile() + ", " + e.getMessage());
+                e.printStackTrace(mOut);
             }
+        }
+    }
 
-            String formattedValue = fixLocalizedString(localizedValue);
-
-            // add new key/value
-            replaceLines.append("\"" + androidKey + "\" = \"" + formattedValue + "\";");
-
-            if (!isTranslated) {
-                replaceLines.append(" // " + TRANSLATE_TO + langCode);
+    // write Localizable.stringsdict for each language with plurals (rewritten in full since every plural is in it)
+    // - untranslated plurals use the English version
+    private void writePluralFiles() {
+        Map<String, Map<String, String>> englishPluralMap = mPluralMap.get(DEFAULT_LANGUAGE);
+        Iterator<String> it = mStringTable.getLanguages().iterator();
+        while (it.hasNext()) {
+            String langCode = it.next();
+            Map<String, Map<String, String>> langPluralMap = new TreeMap<String, Map<String, String>>();
+            if (englishPluralMap != null) {
+                langPluralMap.putAll(englishPluralMap);
+            }
+            if (mPluralMap.containsKey(langCode)) {
+                langPluralMap.putAll(mPluralMap.get(langCode));
+            }
+            if (langPluralMap.isEmpty()) {
+                continue;
             }
-            replaceLines.append('\n');
 
-            // replace file with updated version
-            bw = new BufferedWriter(new FileWriter(localizedFile));
-            bw.write(replaceLines.toString());
-            bw.close();
+            File pluralFile = new File(iosRoot, "resources/" + langCode + ".lproj/Localizable.stringsdict");
+            // nothing to do if plurals haven't changed since last run (unless file was deleted)
+            if (!mStringsChanged && pluralFile.exists()) {
+                continue;
+            }
 
-        } catch (Exception e) {
-            System.out.println("addLocalizedString: Error reading file: " + localizedFile + ", " + e.getMessage());
-            e.printStackTrace();
-        } finally {
-            if (br != null) {
-                try {
-                    br.close();
-                } catch (IOException e) {
+            // key -> quantity -> iOS value
+            for (Map.Entry<String, Map<String, String>> entry : langPluralMap.entrySet()) {
+                Map<String, String> quantityMap = new LinkedHashMap<String, String>();
+                for (Map.Entry<String, String> quantityEntry : entry.getValue().entrySet()) {
+                    quantityMap.put(quantityEntry.getKey(), convertPluralToIos(quantityEntry.getValue()));
                 }
+                entry.setValue(quantityMap);
             }
-            if (bw != null) {
-                try {
-                    bw.close();
-                } catch (IOException e) {
+            try {
+                if (mDiffOut != null) {
+                    StringWriter writer = new StringWriter();
+                    StringsDictFile.write(writer, langPluralMap);
+                    printDiff(pluralFile, writer.getBuffer());
+                    continue;
                 }
+                long numBytes = StringsDictFile.write(pluralFile, langPluralMap);
+                mMetrics.increment(Metrics.Counter.FILES_REWRITTEN);
+                mMetrics.add(Metrics.Counter.BYTES_WRITTEN, numBytes);
+            } catch (IOException e) {
+                mOut.println("ERROR writing file:" + pluralFile + ", " + e.getMessage());
+                e.printStackTrace(mOut);
             }
         }
     }
 
+    // --dry-run: print diff of file's current contents (if any) -> newText
+    private void printDiff(File file, CharSequence newText) throws IOException {
+        CharSequence oldText = null;
+        if (file.exists()) {
+            TextFile textFile = TextFile.read(file);
+            oldText = CharBuffer.wrap(textFile.getText(), 0, textFile.getLength());
+        }
+        String diff = UnifiedDiff.diff(file.getPath(), oldText, newText);
+        if (diff != null) {
+            mDiffOut.print(diff);
+        }
+    }
+
+    // Android value -> iOS value; the same value is usually written for several languages and keys
+    private static Map<String, String> mFixedValueMap = new ConcurrentHashMap<String, String>();
+
     private static String fixLocalizedString(String localizedValue) {
-        // need to reformat the localizedValue a bit from Android to iOS
-
-        // - badly translated values:
-        // ...em \""\""Recomendados\""\""</string>
-        localizedValue = localizedValue.replaceAll("\\\"\"", "\\\"");
-
-        // - android quotes: "" -> iOS quotes: \"
-        //localizedValue = localizedValue.replaceAll("\"\"", "\\\"");
-
-        // uggghhh.. fix quotes that replaceAll isn't working for
-        if (localizedValue.indexOf('"') >= 0) {
-            StringBuilder sb = new StringBuilder();
-            int stPos = 0;
-            while (stPos < localizedValue.length()) {
-                int pos = localizedValue.indexOf('"', stPos);
-                if (pos < 0) {
-                    break;
+        String fixedValue = mFixedValueMap.get(localizedValue);
+        if (fixedValue == null) {
+            fixedValue = convertToIos(localizedValue);
+            mFixedValueMap.put(localizedValue, fixedValue);
+        }
+        return fixedValue;
+    }
+
+    // need to reformat the value a bit from Android to iOS; done in a single pass
+    private static String convertToIos(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 8);
+        // last char of value (after "" is collapsed) which was copied
+        char lastChar = 0;
+        int pos = 0;
+        while (pos < value.length()) {
+            char c = value.charAt(pos);
+            if (c == '"') {
+                // - badly translated values: ...em \""\""Recomendados\""\""</string> -> \"\"Recomendados\"\"
+                if (pos + 1 < value.length() && value.charAt(pos + 1) == '"') {
+                    pos++;
                 }
+                // - android quotes: " -> iOS quotes: \" (unless already escaped)
+                sb.append(lastChar == '\\' ? "\"" : "\\\"");
+                lastChar = c;
+                pos++;
+            } else if (c == '%') {
+                // - android params: %s, %02d -> iOS params: %@ (keeping position: %1$s -> %1$@)
+                pos = appendFormatSpec(value, pos, sb, false);
+                lastChar = value.charAt(pos - 1);
+            } else {
+                sb.append(c);
+                lastChar = c;
+                pos++;
+            }
+        }
+        return sb.toString();
+    }
 
-                // check if line starts with "
-                if (pos == 0 && stPos == 0) {
-                    //System.out.println("line starts with quote, line: " + localizedValue);
-                    // insert "\" in front of quote
-                    sb.append("\\\"");
-                } else if (localizedValue.charAt(pos - 1) != '\\') {
-                    //System.out.println("bad char at: " + pos + ", line: " + localizedValue);
-                    // copy line up to quote
-                    sb.append(localizedValue.substring(stPos, pos));
-                    // insert "\" in front of quote
-                    sb.append("\\\"");
+    // Android plural value -> iOS stringsdict value; the plist isn't a .strings file so Android escapes are removed
+    // instead of kept: \" -> ", \n -> newline. %s is converted to %@ but %d is kept since the count is an integer
+    private static String convertPluralToIos(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        int pos = 0;
+        while (pos < value.length()) {
+            char c = value.charAt(pos);
+            if (c == '\\' && pos + 1 < value.length()) {
+                char escaped = value.charAt(pos + 1);
+                pos += 2;
+                if (escaped == 'n') {
+                    sb.append('\n');
+                } else if (escaped == 't') {
+                    sb.append('\t');
+                } else if (escaped == 'u' && pos + 4 <= value.length() && isHex(value, pos, pos + 4)) {
+                    sb.append((char) Integer.parseInt(value.substring(pos, pos + 4), 16));
+                    pos += 4;
                 } else {
-                    // properly escaped quote.. copy and continue
-                    sb.append(localizedValue.substring(stPos, pos + 1));
+                    sb.append(escaped);
                 }
-                stPos = pos + 1;
+            } else if (c == '"') {
+                // unescaped quotes only keep whitespace in Android: "  spaces  "
+                pos++;
+            } else if (c == '%') {
+                pos = appendFormatSpec(value, pos, sb, true);
+            } else {
+                sb.append(c);
+                pos++;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isHex(String value, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (Character.digit(value.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // copy format spec at value[pos] (a '%') to sb; %s (and %d unless keepNumbers is set) is converted to %@ and
+    // anything else is copied as-is
+    // - returns position after what was copied
+    private static int appendFormatSpec(String value, int pos, StringBuilder sb, boolean keepNumbers) {
+        // %[argument$][flags][width][.precision]conversion; a space isn't taken as a flag so "50% sure" is left alone
+        int end = pos + 1;
+        int argEnd = skipDigits(value, end);
+        int argStart = end;
+        if (argEnd > argStart && argEnd < value.length() && value.charAt(argEnd) == '$') {
+            end = argEnd + 1;
+        } else {
+            argEnd = argStart;
+        }
+        while (end < value.length() && "-#+0,(".indexOf(value.charAt(end)) >= 0) {
+            end++;
+        }
+        end = skipDigits(value, end);
+        if (end + 1 < value.length() && value.charAt(end) == '.' && Character.isDigit(value.charAt(end + 1))) {
+            end = skipDigits(value, end + 1);
+        }
+
+        char conversion = end < value.length() ? value.charAt(end) : 0;
+        if (conversion == 'd' && keepNumbers) {
+            sb.append(value, pos, end + 1);
+            return end + 1;
+        } else if (conversion == 's' || conversion == 'd') {
+            sb.append('%');
+            if (argEnd > argStart) {
+                sb.append(value, argStart, argEnd).append('$');
+            }
+            sb.append('@');
+            return end + 1;
+        } else if (conversion == '%' && end == pos + 1) {
+            // %% is a literal %
+            sb.append("%%");
+            return end + 1;
+        }
+        // not a string/number param; leave it alone
+        sb.append('%');
+        return pos + 1;
+    }
+
+    // iOS value -> Android value (opposite of convertToIos()); each %@ gets the type of the same placeholder in the English
+    // value (by argument # or position): %1$@ -> %1$d, or %s if English doesn't have it
+    private static String convertToAndroid(String value, String englishValue) {
+        // English placeholders without % and argument # ("d", "02d", "s"), in order and by argument #
+        List<String> specList = new ArrayList<String>();
+        Map<String, String> argSpecMap = new HashMap<String, String>();
+        int pos = 0;
+        while ((pos = englishValue.indexOf('%', pos)) >= 0) {
+            int end = skipFormatSpec(englishValue, pos);
+            if (end < 0) {
+                // %% or not a placeholder
+                pos += englishValue.startsWith("%%", pos) ? 2 : 1;
+                continue;
             }
+            int argEnd = skipArgument(englishValue, pos);
+            String spec = englishValue.substring(argEnd, end);
+            specList.add(spec);
+            argSpecMap.put(argEnd > pos + 1 ? englishValue.substring(pos + 1, argEnd - 1) : String.valueOf(specList.size()), spec);
+            pos = end;
+        }
 
-            if (stPos < localizedValue.length()) {
-                // copy remaining part of line
-                sb.append(localizedValue.substring(stPos));
+        StringBuilder sb = new StringBuilder(value.length() + 8);
+        int numSpecs = 0;
+        pos = 0;
+        while (pos < value.length()) {
+            char c = value.charAt(pos);
+            int end = c == '%' ? skipFormatSpec(value, pos) : -1;
+            if (end < 0) {
+                int len = value.startsWith("%%", pos) ? 2 : 1;
+                sb.append(value, pos, pos + len);
+                pos += len;
+                continue;
+            }
+            int argEnd = skipArgument(value, pos);
+            if (value.charAt(end - 1) == '@') {
+                String spec = argEnd > pos + 1 ? argSpecMap.get(value.substring(pos + 1, argEnd - 1))
+                    : numSpecs < specList.size() ? specList.get(numSpecs) : null;
+                // only %s and %d are converted to %@
+                if (spec == null || !(spec.endsWith("s") || spec.endsWith("d"))) {
+                    spec = "s";
+                }
+                sb.append(value, pos, argEnd).append(spec);
+            } else {
+                sb.append(value, pos, end);
             }
-            localizedValue = sb.toString();
+            numSpecs++;
+            pos = end;
+        }
+        return sb.toString();
+    }
+
+    // %[argument$][flags][width][.precision][length]conversion at value[pos] (a '%'); conversion is a letter or @
+    // - returns position after it or -1 if it isn't one
+    private static int skipFormatSpec(String value, int pos) {
+        int end = skipArgument(value, pos);
+        while (end < value.length() && "-#+0,(".indexOf(value.charAt(end)) >= 0) {
+            end++;
+        }
+        end = skipDigits(value, end);
+        if (end + 1 < value.length() && value.charAt(end) == '.' && Character.isDigit(value.charAt(end + 1))) {
+            end = skipDigits(value, end + 1);
+        }
+        while (end < value.length() && "hlqLzjt".indexOf(value.charAt(end)) >= 0) {
+            end++;
+        }
+        if (end < value.length() && (Character.isLetter(value.charAt(end)) || value.charAt(end) == '@')) {
+            return end + 1;
         }
+        return -1;
+    }
 
-        // - android params: %02s -> iOS params: %@
-        localizedValue = localizedValue.replaceAll("%.*?[ds]", "%@");
+    // position after argument # of format spec at value[pos] ("%1$"), or after the '%' if it doesn't have one
+    private static int skipArgument(String value, int pos) {
+        int end = skipDigits(value, pos + 1);
+        if (end > pos + 1 && end < value.length() && value.charAt(end) == '$') {
+            return end + 1;
+        }
+        return pos + 1;
+    }
 
-        return localizedValue;
+    private static int skipDigits(String value, int pos) {
+        while (pos < value.length() && value.charAt(pos) >= '0' && value.charAt(pos) <= '9') {
+            pos++;
+        }
+        return pos;
     }
 }
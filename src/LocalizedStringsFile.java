@@ -0,0 +1,223 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * in-memory copy of an iOS Localizable.strings file. Lines keep their original order and are indexed by key so
+ * adds/updates don't need to re-read the file. Call write() once when done.
+ */
+class LocalizedStringsFile {
+
+    private final File mFile;
+
+    // lines in file order; removed lines are set to null
+    private final List<String> mLines = new ArrayList<String>();
+
+    // key ("text_ok") -> index into mLines
+    private final Map<String, Integer> mKeyMap = new HashMap<String, Integer>();
+
+    private boolean mIsModified;
+
+    // charset file was read with (UTF-8 unless file has a UTF-16 byte order mark)
+    private Charset mCharset = Charset.forName("UTF-8");
+
+    LocalizedStringsFile(File file) {
+        mFile = file;
+        // new files need to be created even if nothing gets added
+        mIsModified = !file.exists();
+    }
+
+    File getFile() {
+        return mFile;
+    }
+
+    /**
+     * @return # of bytes read or -1 if file doesn't exist yet
+     */
+    long read() throws IOException {
+        if (!mFile.exists()) {
+            return -1;
+        }
+        TextFile textFile = TextFile.read(mFile);
+        mCharset = textFile.getCharset();
+        char[] text = textFile.getText();
+        int length = textFile.getLength();
+        int lineStart = 0;
+        while (lineStart < length) {
+            int lineEnd = lineStart;
+            while (lineEnd < length && text[lineEnd] != '\n' && text[lineEnd] != '\r') {
+                lineEnd++;
+            }
+            String line = new String(text, lineStart, lineEnd - lineStart);
+            String key = getKey(line);
+            if (key != null && !mKeyMap.containsKey(key)) {
+                mKeyMap.put(key, mLines.size());
+            }
+            mLines.add(line);
+
+            // skip line ending: \n, \r\n or \r
+            if (lineEnd < length && text[lineEnd] == '\r') {
+                lineEnd++;
+            }
+            if (lineEnd < length && text[lineEnd] == '\n') {
+                lineEnd++;
+            }
+            lineStart = lineEnd;
+        }
+        return textFile.getNumBytes();
+    }
+
+    /**
+     * read every entry ("key" = "value";) in a single pass over file without keeping its lines
+     *
+     * @param untranslatedComment entries followed by a comment containing this on the same line are left out
+     * @return key -> value as it is in file (iOS escapes are kept); empty if file doesn't exist
+     */
+    static Map<String, String> readValues(File file, String untranslatedComment) throws IOException {
+        Map<String, String> valueMap = new LinkedHashMap<String, String>();
+        if (!file.exists()) {
+            return valueMap;
+        }
+        TextFile textFile = TextFile.read(file);
+        char[] text = textFile.getText();
+        int length = textFile.getLength();
+        int pos = 0;
+        while (pos < length) {
+            char c = text[pos];
+            if (c == '/' && pos + 1 < length && text[pos + 1] == '*') {
+                pos = skipPast(text, length, pos + 2, "*/");
+            } else if (c == '/' && pos + 1 < length && text[pos + 1] == '/') {
+                pos = skipPast(text, length, pos + 2, "\n");
+            } else if (c != '"') {
+                pos++;
+            } else {
+                // "key" = "value";
+                int keyEnd = skipQuoted(text, length, pos + 1);
+                int valueStart = skipSpaces(text, length, keyEnd + 1);
+                if (valueStart >= length || text[valueStart] != '=') {
+                    pos = keyEnd + 1;
+                    continue;
+                }
+                valueStart = skipSpaces(text, length, valueStart + 1);
+                if (valueStart >= length || text[valueStart] != '"') {
+                    pos = valueStart;
+                    continue;
+                }
+                int valueEnd = skipQuoted(text, length, valueStart + 1);
+                String key = new String(text, pos + 1, keyEnd - pos - 1);
+                String value = new String(text, valueStart + 1, valueEnd - valueStart - 1);
+
+                // rest of line: ; // TRANSLATE TO es
+                pos = valueEnd + 1;
+                int lineEnd = pos;
+                while (lineEnd < length && text[lineEnd] != '\n' && text[lineEnd] != '\r') {
+                    lineEnd++;
+                }
+                if (!new String(text, pos, lineEnd - pos).contains(untranslatedComment)) {
+                    valueMap.put(key, value);
+                }
+                pos = lineEnd;
+            }
+        }
+        return valueMap;
+    }
+
+    // position of closing quote of a string starting at pos (after the opening quote) or length if there isn't one
+    private static int skipQuoted(char[] text, int length, int pos) {
+        while (pos < length && text[pos] != '"') {
+            pos += text[pos] == '\\' ? 2 : 1;
+        }
+        return Math.min(pos, length);
+    }
+
+    private static int skipSpaces(char[] text, int length, int pos) {
+        while (pos < length && Character.isWhitespace(text[pos])) {
+            pos++;
+        }
+        return pos;
+    }
+
+    // position after end (or length if it's not found)
+    private static int skipPast(char[] text, int length, int pos, String end) {
+        for (; pos + end.length() <= length; pos++) {
+            int i = 0;
+            while (i < end.length() && text[pos + i] == end.charAt(i)) {
+                i++;
+            }
+            if (i == end.length()) {
+                return pos + end.length();
+            }
+        }
+        return length;
+    }
+
+    // format: "<key>" = "<value>"
+    private static String getKey(String line) {
+        int stPos = line.indexOf("\"");
+        if (stPos >= 0) {
+            int endPos = line.indexOf("\"", stPos + 1);
+            if (endPos > 0) {
+                return line.substring(stPos + 1, endPos);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return existing line for key or null if key isn't in file
+     */
+    String getLine(String key) {
+        Integer index = mKeyMap.get(key);
+        if (index == null) {
+            return null;
+        }
+        return mLines.get(index);
+    }
+
+    /**
+     * add line for key to end of file, replacing any existing line for this key
+     */
+    void putLine(String key, String line) {
+        Integer index = mKeyMap.get(key);
+        if (index != null) {
+            mLines.set(index, null);
+        }
+        mKeyMap.put(key, mLines.size());
+        mLines.add(line);
+        mIsModified = true;
+    }
+
+    boolean isModified() {
+        return mIsModified;
+    }
+
+    /**
+     * @return # of bytes written
+     */
+    long write() throws IOException {
+        TextFile.createParentDirs(mFile);
+
+        long numBytes = TextFile.write(mFile, getText(), mCharset);
+        mIsModified = false;
+        return numBytes;
+    }
+
+    /**
+     * @return contents write() would save
+     */
+    CharSequence getText() {
+        StringBuilder sb = new StringBuilder();
+        for (String line : mLines) {
+            if (line != null) {
+                sb.append(line);
+                sb.append('\n');
+            }
+        }
+        return sb;
+    }
+}
@@ -0,0 +1,168 @@
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * timers and counters for a run; written as JSON with --metrics. Counters can be updated from any thread.
+ */
+class Metrics {
+
+    enum Phase {
+        // read Android strings
+        INDEX("index"),
+        // search iOS source files
+        SCAN("scan"),
+        // add unused and untranslated strings to Localizable.strings
+        FILL("fill"),
+        // write Localizable.strings files
+        WRITE("write");
+
+        final String name;
+
+        Phase(String name) {
+            this.name = name;
+        }
+    }
+
+    enum Counter {
+        FILES_READ("filesRead"),
+        FILES_REWRITTEN("filesRewritten"),
+        FILES_SKIPPED("filesSkipped"),
+        BYTES_READ("bytesRead"),
+        BYTES_WRITTEN("bytesWritten"),
+        // iOS strings checked against English values
+        STRINGS_INSPECTED("stringsInspected"),
+        // iOS strings with a matching English value (including ones which can't be localized)
+        STRINGS_MATCHED("stringsMatched"),
+        // iOS strings replaced with NSLocalizedString()
+        STRINGS_LOCALIZED("stringsLocalized"),
+        // iOS strings localized with --normalize which only match an English value after normalizing (included in the above)
+        STRINGS_NEAR_MATCHED("stringsNearMatched");
+
+        final String name;
+
+        Counter(String name) {
+            this.name = name;
+        }
+    }
+
+    private final long mStartTime = System.nanoTime();
+    // set when run is done; 0 while running
+    private volatile long mEndTime;
+
+    private final long[] mPhaseStartArr = new long[Phase.values().length];
+    private final long[] mPhaseTimeArr = new long[Phase.values().length];
+
+    private final AtomicLong[] mCounterArr = new AtomicLong[Counter.values().length];
+
+    // language code -> # of keys added to Localizable.strings
+    private final Map<String, Long> mKeysAddedMap = new TreeMap<String, Long>();
+
+    Metrics() {
+        for (int i = 0; i < mCounterArr.length; i++) {
+            mCounterArr[i] = new AtomicLong();
+        }
+    }
+
+    void start(Phase phase) {
+        mPhaseStartArr[phase.ordinal()] = System.nanoTime();
+    }
+
+    void stop(Phase phase) {
+        mPhaseTimeArr[phase.ordinal()] += System.nanoTime() - mPhaseStartArr[phase.ordinal()];
+    }
+
+    void add(Counter counter, long value) {
+        mCounterArr[counter.ordinal()].addAndGet(value);
+    }
+
+    void increment(Counter counter) {
+        mCounterArr[counter.ordinal()].incrementAndGet();
+    }
+
+    long get(Counter counter) {
+        return mCounterArr[counter.ordinal()].get();
+    }
+
+    synchronized void addKey(String langCode) {
+        Long numKeys = mKeysAddedMap.get(langCode);
+        mKeysAddedMap.put(langCode, numKeys == null ? 1 : numKeys + 1);
+    }
+
+    // total # of keys added to Localizable.strings (all languages)
+    synchronized long getKeysAdded() {
+        long numKeys = 0;
+        for (Long value : mKeysAddedMap.values()) {
+            numKeys += value;
+        }
+        return numKeys;
+    }
+
+    void finish() {
+        mEndTime = System.nanoTime();
+    }
+
+    // time from when metrics were created until finish() (or now)
+    long getTotalMillis() {
+        return getTotalNanos() / 1000000;
+    }
+
+    private long getTotalNanos() {
+        return (mEndTime != 0 ? mEndTime : System.nanoTime()) - mStartTime;
+    }
+
+    synchronized String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n  \"phases\": {\n");
+        for (Phase phase : Phase.values()) {
+            sb.append("    \"").append(phase.name).append("Ms\": ").append(toMillis(mPhaseTimeArr[phase.ordinal()])).append(",\n");
+        }
+        sb.append("    \"totalMs\": ").append(toMillis(getTotalNanos())).append("\n  },\n");
+
+        sb.append("  \"counters\": {\n");
+        Counter[] counterArr = Counter.values();
+        for (int i = 0; i < counterArr.length; i++) {
+            sb.append("    \"").append(counterArr[i].name).append("\": ").append(get(counterArr[i]));
+            sb.append(i < counterArr.length - 1 ? ",\n" : "\n");
+        }
+        sb.append("  },\n");
+
+        sb.append("  \"keysAdded\": {");
+        int i = 0;
+        for (Map.Entry<String, Long> entry : mKeysAddedMap.entrySet()) {
+            sb.append(i++ > 0 ? ",\n" : "\n");
+            sb.append("    ");
+            appendString(sb, entry.getKey());
+            sb.append(": ").append(entry.getValue());
+        }
+        sb.append(i > 0 ? "\n  }\n" : "}\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private static String toMillis(long nanos) {
+        return String.format(Locale.US, "%.3f", nanos / 1000000.0);
+    }
+
+    static void appendString(StringBuilder sb, String str) {
+        sb.append('"');
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else if (c == '\r') {
+                sb.append("\\r");
+            } else if (c == '\t') {
+                sb.append("\\t");
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+}
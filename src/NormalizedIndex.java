@@ -0,0 +1,142 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * --normalize: English values keyed by a canonical form so iOS strings which only differ in case, whitespace or format
+ * placeholders still find their key: "Network error" and "Welcome, %@" match Android's "Network Error" and
+ * "Welcome, %1$s". Placeholders keep their argument #, so "%2$@ of %1$@" doesn't match "%1$s of %2$s". A lookup is a
+ * single pass over the string and one hash lookup.
+ */
+class NormalizedIndex {
+
+    // every format placeholder (%@, %d, %1$s, %.2f, %ld) is replaced by its argument # between 2 of these; can't be in a
+    // value
+    private static final char PLACEHOLDER = '\0';
+
+    // length modifiers and conversions of a placeholder (Java and Objective-C)
+    private static final String LENGTH_CHARS = "hlqLzjt";
+    private static final String CONVERSION_CHARS = "@bdDiuUxXoOfFeEgGaAcCsSp";
+
+    // canonical form -> key
+    private final Map<String, String> mKeyMap = new HashMap<String, String>();
+
+    void clear() {
+        mKeyMap.clear();
+    }
+
+    /**
+     * add English value; when more than 1 key has the same canonical form, the first alphabetically is used (same as
+     * exact duplicates) so the result doesn't depend on the order values are added in
+     */
+    void add(String value, String key) {
+        String normalized = normalize(value);
+        if (normalized == null) {
+            return;
+        }
+        String existingKey = mKeyMap.get(normalized);
+        if (existingKey == null || key.compareTo(existingKey) < 0) {
+            mKeyMap.put(normalized, key);
+        }
+    }
+
+    /**
+     * @return key of the English value with the same canonical form as text or null if there isn't one
+     */
+    String get(CharSequence text) {
+        String normalized = normalize(text);
+        return normalized != null ? mKeyMap.get(normalized) : null;
+    }
+
+    /**
+     * canonical form: lower case, runs of whitespace (including \n and \t escapes) collapsed to a single space and
+     * trimmed, other escapes (\' \") replaced by the char itself and placeholders replaced by their argument # (given
+     * or by position: "%@ of %@" is the same as "%1$s of %2$s")
+     *
+     * @return canonical form or null if value is too short (same as exact matches) or has no letters (ie: only
+     *         placeholders: "%1$s: %2$s") so it would match too much
+     */
+    static String normalize(CharSequence value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        boolean hasLetter = false;
+        boolean isSpace = false;
+        // # of placeholders without an argument #
+        int numPlaceholders = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                i++;
+                c = value.charAt(i);
+                if (c == 'n' || c == 't' || c == 'r') {
+                    c = ' ';
+                }
+            } else if (c == '%') {
+                int end = skipPlaceholder(value, i + 1);
+                if (end > 0) {
+                    if (isSpace) {
+                        sb.append(' ');
+                        isSpace = false;
+                    }
+                    int argEnd = skipDigits(value, i + 1);
+                    sb.append(PLACEHOLDER);
+                    if (argEnd > i + 1 && value.charAt(argEnd) == '$') {
+                        sb.append(value, i + 1, argEnd);
+                    } else {
+                        sb.append(++numPlaceholders);
+                    }
+                    sb.append(PLACEHOLDER);
+                    i = end - 1;
+                    continue;
+                } else if (i + 1 < value.length() && value.charAt(i + 1) == '%') {
+                    // %% is a literal %
+                    i++;
+                }
+            }
+
+            if (Character.isWhitespace(c)) {
+                isSpace = sb.length() > 0;
+                continue;
+            }
+            if (isSpace) {
+                sb.append(' ');
+                isSpace = false;
+            }
+            if (Character.isLetter(c)) {
+                hasLetter = true;
+            }
+            sb.append(Character.toLowerCase(Character.toUpperCase(c)));
+        }
+        // ignore very short strings: "x" (exact matches skip English values this short too)
+        return hasLetter && sb.length() > 1 ? sb.toString() : null;
+    }
+
+    // %[argument$][flags][width][.precision][length]conversion starting after the '%' at value[pos - 1]
+    // - returns position after placeholder or -1 if it isn't one
+    private static int skipPlaceholder(CharSequence value, int pos) {
+        int end = skipDigits(value, pos);
+        if (end > pos && end < value.length() && value.charAt(end) == '$') {
+            pos = end + 1;
+        }
+        // a space isn't taken as a flag so "50% sure" isn't a placeholder
+        while (pos < value.length() && "-#+0,(".indexOf(value.charAt(pos)) >= 0) {
+            pos++;
+        }
+        pos = skipDigits(value, pos);
+        if (pos + 1 < value.length() && value.charAt(pos) == '.' && Character.isDigit(value.charAt(pos + 1))) {
+            pos = skipDigits(value, pos + 1);
+        }
+        while (pos < value.length() && LENGTH_CHARS.indexOf(value.charAt(pos)) >= 0) {
+            pos++;
+        }
+        if (pos < value.length() && CONVERSION_CHARS.indexOf(value.charAt(pos)) >= 0) {
+            return pos + 1;
+        }
+        return -1;
+    }
+
+    private static int skipDigits(CharSequence value, int pos) {
+        while (pos < value.length() && value.charAt(pos) >= '0' && value.charAt(pos) <= '9') {
+            pos++;
+        }
+        return pos;
+    }
+}
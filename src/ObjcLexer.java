@@ -0,0 +1,282 @@
+import java.util.Arrays;
+
+/**
+ * minimal Objective-C lexer (.m, .mm, .h) which finds @"..." strings that could be localized. Comments, preprocessor lines, C strings
+ * and character literals are skipped; strings inside NSLocalizedString(..) or NSLog/DDLog(..) calls are not returned.
+ * Strings in a static/const statement are returned with isConst() set since they can't be localized.
+ * <p>
+ * usage: while (lexer.nextString()) { .. getStart() / getEnd() .. }
+ */
+class ObjcLexer implements StringExtractor {
+
+    static final Factory FACTORY = new Factory() {
+        @Override
+        public StringExtractor create(char[] text, int length) {
+            return new ObjcLexer(text, length);
+        }
+    };
+
+    private final char[] mText;
+    private final int mLength;
+
+    private int mPos;
+
+    // true until something other than whitespace is found on the current line (for preprocessor lines)
+    private boolean mIsLineStart = true;
+
+    // last char which wasn't whitespace or part of a comment
+    private char mLastChar;
+
+    private int mParenDepth;
+
+    // depth of ( which opened NSLocalizedString(..) / NSLog(..) call; -1 if not in one
+    private int mSkipParenDepth = -1;
+
+    // set when identifier was NSLocalizedString / NSLog and a ( should follow
+    private boolean mIsSkipCall;
+
+    // current statement has 'static' or 'const' in it
+    private boolean mIsConstStatement;
+
+    // for each open {: true if it's an initializer (= {..}) rather than a block
+    private boolean[] mBraceStack = new boolean[16];
+    private int mBraceDepth;
+
+    // last string found: position of @ and closing "
+    private int mStart;
+    private int mEnd;
+    private boolean mIsConst;
+
+    ObjcLexer(char[] text, int length) {
+        mText = text;
+        mLength = length;
+    }
+
+    @Override
+    public boolean nextString() {
+        while (mPos < mLength) {
+            char c = mText[mPos];
+
+            if (c == '\n') {
+                mIsLineStart = true;
+                mPos++;
+                continue;
+            } else if (c == ' ' || c == '\t' || c == '\r' || c == '\f') {
+                mPos++;
+                continue;
+            }
+
+            boolean isLineStart = mIsLineStart;
+            mIsLineStart = false;
+
+            if (c == '/' && peek(1) == '/') {
+                // line comment
+                skipToEndOfLine(false);
+                continue;
+            } else if (c == '/' && peek(1) == '*') {
+                // block comment
+                int end = indexOf("*/", mPos + 2);
+                mPos = end < 0 ? mLength : end + 2;
+                continue;
+            } else if (c == '#' && isLineStart) {
+                // preprocessor line (#define, #import, ..); may continue on next line with '\'
+                skipToEndOfLine(true);
+                continue;
+            } else if (c == '@' && peek(1) == '"') {
+                int start = mPos;
+                int end = skipQuoted(mPos + 1, '"');
+                mLastChar = '"';
+                if (end < 0) {
+                    // unterminated string
+                    continue;
+                } else if (mSkipParenDepth >= 0) {
+                    // already localized or in a log statement
+                    continue;
+                }
+                mStart = start;
+                mEnd = end;
+                mIsConst = mIsConstStatement;
+                return true;
+            } else if (c == '"' || c == '\'') {
+                // C string or char literal
+                skipQuoted(mPos, c);
+                mLastChar = c;
+                continue;
+            } else if (isIdentifierStart(c)) {
+                int start = mPos;
+                while (mPos < mLength && isIdentifierPart(mText[mPos])) {
+                    mPos++;
+                }
+                onIdentifier(start, mPos - start);
+                mLastChar = 'a';
+                continue;
+            }
+
+            onPunctuation(c);
+            mLastChar = c;
+            mPos++;
+        }
+        return false;
+    }
+
+    private void onIdentifier(int start, int length) {
+        if (regionEquals(start, length, "static") || regionEquals(start, length, "const")) {
+            mIsConstStatement = true;
+        } else if (mSkipParenDepth < 0) {
+            mIsSkipCall = regionStartsWith(start, length, "NSLocalizedString") || regionEquals(start, length, "NSLog")
+                || regionStartsWith(start, length, "DDLog");
+            return;
+        }
+        mIsSkipCall = false;
+    }
+
+    private void onPunctuation(char c) {
+        if (c == '(') {
+            mParenDepth++;
+            if (mIsSkipCall) {
+                mSkipParenDepth = mParenDepth;
+            }
+        } else if (c == ')') {
+            if (mParenDepth == mSkipParenDepth) {
+                mSkipParenDepth = -1;
+            }
+            mParenDepth--;
+        } else if (c == ';') {
+            mIsConstStatement = false;
+        } else if (c == '{') {
+            // static NSString *names[] = { @"a", @"b" }; is still part of the static statement
+            boolean isInitializer = mLastChar == '=' || mLastChar == ',' || mLastChar == '{';
+            if (mBraceDepth == mBraceStack.length) {
+                mBraceStack = Arrays.copyOf(mBraceStack, mBraceDepth * 2);
+            }
+            mBraceStack[mBraceDepth++] = isInitializer;
+            if (!isInitializer) {
+                mIsConstStatement = false;
+            }
+        } else if (c == '}') {
+            boolean isInitializer = mBraceDepth > 0 && mBraceStack[--mBraceDepth];
+            if (!isInitializer) {
+                mIsConstStatement = false;
+            }
+        }
+        mIsSkipCall = false;
+    }
+
+    /**
+     * @return position of closing quote or -1 if string isn't closed on this line; mPos is moved past string
+     */
+    private int skipQuoted(int quotePos, char quote) {
+        int pos = quotePos + 1;
+        while (pos < mLength) {
+            char c = mText[pos];
+            if (c == '\\') {
+                // escaped char: \" or \\
+                pos += 2;
+                continue;
+            } else if (c == quote) {
+                mPos = pos + 1;
+                return pos;
+            } else if (c == '\n') {
+                break;
+            }
+            pos++;
+        }
+        mPos = Math.min(pos, mLength);
+        return -1;
+    }
+
+    private void skipToEndOfLine(boolean allowContinuation) {
+        while (mPos < mLength) {
+            char c = mText[mPos];
+            if (c == '\n') {
+                if (!allowContinuation || !isContinued(mPos)) {
+                    return;
+                }
+            }
+            mPos++;
+        }
+    }
+
+    // check if line ending at newlinePos ends with '\'
+    private boolean isContinued(int newlinePos) {
+        int pos = newlinePos - 1;
+        if (pos >= 0 && mText[pos] == '\r') {
+            pos--;
+        }
+        return pos >= 0 && mText[pos] == '\\';
+    }
+
+    private char peek(int offset) {
+        int pos = mPos + offset;
+        return pos < mLength ? mText[pos] : 0;
+    }
+
+    private int indexOf(String str, int fromPos) {
+        for (int pos = fromPos; pos + str.length() <= mLength; pos++) {
+            if (regionStartsWith(pos, str.length(), str)) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    private boolean regionEquals(int start, int length, String str) {
+        return length == str.length() && regionStartsWith(start, length, str);
+    }
+
+    private boolean regionStartsWith(int start, int length, String str) {
+        if (length < str.length()) {
+            return false;
+        }
+        for (int i = 0; i < str.length(); i++) {
+            if (mText[start + i] != str.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == '$';
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return isIdentifierStart(c) || (c >= '0' && c <= '9');
+    }
+
+    /**
+     * @return position of @ which starts last string found
+     */
+    @Override
+    public int getStart() {
+        return mStart;
+    }
+
+    @Override
+    public int getValueStart() {
+        return mStart + 2;
+    }
+
+    @Override
+    public int getEnd() {
+        return mEnd;
+    }
+
+    /**
+     * @return true if last string found is part of a static or const declaration
+     */
+    @Override
+    public boolean isConst() {
+        return mIsConst;
+    }
+
+    // NSLocalizedString(@"key", @"value")
+    @Override
+    public void appendLocalized(StringBuilder sb, String key, char[] text, int valueStart, int valueEnd) {
+        sb.append("NSLocalizedString(@\"");
+        sb.append(key);
+        sb.append("\", @\"");
+        sb.append(text, valueStart, valueEnd - valueStart);
+        sb.append("\")");
+    }
+}
@@ -0,0 +1,177 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * which iOS source files are searched: a file is searched if it matches an include rule and neither it nor any directory
+ * above it matches an exclude rule. Excluded directories aren't walked at all.
+ * <p>
+ * rules are glob patterns relative to the iOS root. A pattern without a '/' is matched against the name only (at any
+ * depth), so "Pods" excludes every directory named Pods and "*.m" includes every .m file. Config file format, 1 rule per
+ * line (blank lines and lines starting with # are ignored):
+ *
+ * <pre>
+ * include *.m
+ * exclude Pods
+ * exclude Classes/Generated/**
+ * </pre>
+ */
+class PathFilter {
+
+    // used when there's no config file
+    private static final String[] DEFAULT_INCLUDES = { "*.m", "*.mm", "*.h", "*.swift" };
+    private static final String[] DEFAULT_EXCLUDES = {
+        // not our code..
+        "external", "Pods", "Carthage",
+        // build output
+        "build", "DerivedData",
+        "RRSStoryboard.m", "MobeamConstants.m" };
+
+    private final Path mRoot;
+
+    private final List<Rule> mIncludeList = new ArrayList<Rule>();
+    private final List<Rule> mExcludeList = new ArrayList<Rule>();
+
+    // compiled glob pattern
+    private static class Rule {
+        final PathMatcher matcher;
+        // true to match name only; false to match path relative to root
+        final boolean isNameOnly;
+
+        Rule(PathMatcher matcher, boolean isNameOnly) {
+            this.matcher = matcher;
+            this.isNameOnly = isNameOnly;
+        }
+    }
+
+    private PathFilter(File root) {
+        mRoot = root.toPath().toAbsolutePath().normalize();
+    }
+
+    /**
+     * @return filter with default rules
+     */
+    static PathFilter createDefault(File root) {
+        PathFilter filter = new PathFilter(root);
+        for (String pattern : DEFAULT_INCLUDES) {
+            filter.mIncludeList.add(compile(pattern));
+        }
+        for (String pattern : DEFAULT_EXCLUDES) {
+            filter.mExcludeList.add(compile(pattern));
+        }
+        return filter;
+    }
+
+    /**
+     * @return filter with only the rules in configFile (default rules aren't used)
+     */
+    static PathFilter load(File root, File configFile) throws IOException {
+        PathFilter filter = new PathFilter(root);
+        TextFile textFile = TextFile.read(configFile);
+        String[] lineArr = new String(textFile.getText(), 0, textFile.getLength()).split("\r\n|\r|\n");
+        for (int i = 0; i < lineArr.length; i++) {
+            String line = lineArr[i].trim();
+            if (line.length() == 0 || line.startsWith("#")) {
+                continue;
+            }
+            int spacePos = line.indexOf(' ');
+            String type = spacePos > 0 ? line.substring(0, spacePos) : line;
+            String pattern = spacePos > 0 ? line.substring(spacePos + 1).trim() : "";
+            if (pattern.length() == 0 || (!type.equals("include") && !type.equals("exclude"))) {
+                throw new IOException(configFile + ": line " + (i + 1) + ": expected include <glob> or exclude <glob>: " + line);
+            }
+            Rule rule;
+            try {
+                rule = compile(pattern);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(configFile + ": line " + (i + 1) + ": invalid pattern: " + pattern + ", " + e.getMessage());
+            }
+            (type.equals("include") ? filter.mIncludeList : filter.mExcludeList).add(rule);
+        }
+        return filter;
+    }
+
+    private static Rule compile(String pattern) {
+        // ignore trailing '/' (ie: "build/") since only directories are walked into anyway
+        while (pattern.length() > 1 && pattern.endsWith("/")) {
+            pattern = pattern.substring(0, pattern.length() - 1);
+        }
+        FileSystem fileSystem = FileSystems.getDefault();
+        return new Rule(fileSystem.getPathMatcher("glob:" + pattern), pattern.indexOf('/') < 0);
+    }
+
+    private boolean matches(List<Rule> ruleList, Path path) {
+        Path relativePath = mRoot.relativize(path.toAbsolutePath().normalize());
+        Path name = relativePath.getFileName();
+        for (Rule rule : ruleList) {
+            if (rule.matcher.matches(rule.isNameOnly ? name : relativePath)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if directory (under root) and everything in it should be skipped
+     */
+    boolean isExcludedDir(File dir) {
+        Path path = dir.toPath();
+        return !path.toAbsolutePath().normalize().equals(mRoot) && matches(mExcludeList, path);
+    }
+
+    /**
+     * @return true if file should be searched; doesn't check the directories above it
+     */
+    boolean isIncludedFile(File file) {
+        Path path = file.toPath();
+        return matches(mIncludeList, path) && !matches(mExcludeList, path);
+    }
+
+    /**
+     * find files to search under dir (root or a directory under it), sorted by path
+     *
+     * @param dirList if not null, every directory which was walked is added to it
+     */
+    List<File> findFiles(File dir, final List<File> dirList) throws IOException {
+        final List<File> fileList = new ArrayList<File>();
+        Files.walkFileTree(dir.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes attrs) {
+                File dir = path.toFile();
+                if (isExcludedDir(dir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                if (dirList != null) {
+                    dirList.add(dir);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && isIncludedFile(path.toFile())) {
+                    fileList.add(path.toFile());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path path, IOException e) {
+                // unreadable file or directory; skip it
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        Collections.sort(fileList);
+        return fileList;
+    }
+}
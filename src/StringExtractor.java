@@ -0,0 +1,45 @@
+/**
+ * finds string literals which could be localized in source code of a single language, and writes the localized
+ * replacement for them. A new extractor is created for each file.
+ * <p>
+ * usage: while (extractor.nextString()) { .. getStart() / getValueStart() / getEnd() .. }
+ */
+interface StringExtractor {
+
+    // creates extractor for contents of a file
+    interface Factory {
+        StringExtractor create(char[] text, int length);
+    }
+
+    /**
+     * find next string which could be localized
+     *
+     * @return false when end of text is reached
+     */
+    boolean nextString();
+
+    /**
+     * @return position of first char of last string found, including any prefix (ie: the @ of @"..")
+     */
+    int getStart();
+
+    /**
+     * @return position of first char inside the quotes of last string found
+     */
+    int getValueStart();
+
+    /**
+     * @return position of closing quote of last string found
+     */
+    int getEnd();
+
+    /**
+     * @return true if last string found has to be a literal (ie: static/const declaration) so it can't be localized
+     */
+    boolean isConst();
+
+    /**
+     * append localized version of string: text[valueStart, valueEnd) is the string without quotes
+     */
+    void appendLocalized(StringBuilder sb, String key, char[] text, int valueStart, int valueEnd);
+}
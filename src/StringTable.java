@@ -0,0 +1,175 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * strings for all languages stored as a table: each key ("text_ok") is stored once and given an id (0, 1, 2, ..), and
+ * each language has an array of values indexed by key id plus a bitset of which keys it has.
+ */
+class StringTable {
+
+    // values for a single language
+    private static class Column {
+        String[] values = new String[64];
+        final BitSet keySet = new BitSet();
+    }
+
+    // key -> key id
+    private final Map<String, Integer> mKeyIdMap = new HashMap<String, Integer>();
+
+    // key id -> key
+    private String[] mKeys = new String[64];
+    private int mNumKeys;
+
+    // language code -> values; sorted by language code
+    private final Map<String, Column> mColumnMap = new TreeMap<String, Column>();
+
+    // ids of keys marked translatable="false"; these are never missing from a language
+    private final BitSet mUntranslatableKeyIds = new BitSet();
+
+    /**
+     * @return id for key or -1 if no language has this key
+     */
+    int getKeyId(String key) {
+        Integer keyId = mKeyIdMap.get(key);
+        return keyId != null ? keyId : -1;
+    }
+
+    String getKey(int keyId) {
+        return mKeys[keyId];
+    }
+
+    /**
+     * @return # of keys in all languages; key ids are 0 to getNumKeys() - 1 in the order they were added
+     */
+    int getNumKeys() {
+        return mNumKeys;
+    }
+
+    /**
+     * add key without a value for any language (ie: to keep key ids the same as a previous run)
+     *
+     * @return key id
+     */
+    int addKey(String key) {
+        Integer keyId = mKeyIdMap.get(key);
+        if (keyId != null) {
+            return keyId;
+        }
+        if (mNumKeys == mKeys.length) {
+            mKeys = Arrays.copyOf(mKeys, mNumKeys * 2);
+        }
+        mKeys[mNumKeys] = key;
+        mKeyIdMap.put(key, mNumKeys);
+        return mNumKeys++;
+    }
+
+    /**
+     * add language even if it has no strings yet
+     */
+    void addLanguage(String langCode) {
+        getColumn(langCode);
+    }
+
+    private Column getColumn(String langCode) {
+        Column column = mColumnMap.get(langCode);
+        if (column == null) {
+            column = new Column();
+            mColumnMap.put(langCode, column);
+        }
+        return column;
+    }
+
+    void put(String langCode, String key, String value) {
+        int keyId = addKey(key);
+        Column column = getColumn(langCode);
+        if (keyId >= column.values.length) {
+            column.values = Arrays.copyOf(column.values, Math.max(keyId + 1, column.values.length * 2));
+        }
+        column.values[keyId] = value;
+        column.keySet.set(keyId);
+    }
+
+    void putAll(String langCode, Map<String, String> stringMap) {
+        for (Map.Entry<String, String> entry : stringMap.entrySet()) {
+            put(langCode, entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @return value or null if language doesn't have this key
+     */
+    String get(String langCode, int keyId) {
+        Column column = mColumnMap.get(langCode);
+        if (column == null || keyId < 0 || keyId >= column.values.length) {
+            return null;
+        }
+        return column.values[keyId];
+    }
+
+    String get(String langCode, String key) {
+        return get(langCode, getKeyId(key));
+    }
+
+    /**
+     * @return language codes in sorted order
+     */
+    Set<String> getLanguages() {
+        return mColumnMap.keySet();
+    }
+
+    /**
+     * @return # of strings language has
+     */
+    int size(String langCode) {
+        Column column = mColumnMap.get(langCode);
+        return column != null ? column.keySet.cardinality() : 0;
+    }
+
+    /**
+     * @return ids of keys language has (don't modify)
+     */
+    BitSet getKeyIds(String langCode) {
+        Column column = mColumnMap.get(langCode);
+        return column != null ? column.keySet : new BitSet();
+    }
+
+    /**
+     * @return ids of keys which fromLangCode has and langCode doesn't (except ones which aren't translatable)
+     */
+    BitSet getMissingKeyIds(String fromLangCode, String langCode) {
+        BitSet missing = (BitSet) getKeyIds(fromLangCode).clone();
+        missing.andNot(getKeyIds(langCode));
+        missing.andNot(mUntranslatableKeyIds);
+        return missing;
+    }
+
+    /**
+     * mark key as translatable="false": it has the same value in every language
+     */
+    void setUntranslatable(String key) {
+        mUntranslatableKeyIds.set(addKey(key));
+    }
+
+    boolean isTranslatable(int keyId) {
+        return !mUntranslatableKeyIds.get(keyId);
+    }
+
+    /**
+     * @return ids of keys which aren't translatable (don't modify)
+     */
+    BitSet getUntranslatableKeyIds() {
+        return mUntranslatableKeyIds;
+    }
+
+    void clear() {
+        mKeyIdMap.clear();
+        Arrays.fill(mKeys, 0, mNumKeys, null);
+        mNumKeys = 0;
+        mColumnMap.clear();
+        mUntranslatableKeyIds.clear();
+    }
+}
@@ -0,0 +1,95 @@
+import java.util.Arrays;
+
+/**
+ * trie of patterns stored in flat arrays. goTo() follows one edge at a time, so a piece of text with known start/end can
+ * be checked against every pattern in a single pass over it without creating a string.
+ */
+class StringTrie {
+
+    static final int ROOT = 0;
+
+    // no transition
+    static final int NONE = -1;
+
+    // per state: sorted transition chars and the state each one goes to
+    private char[][] mChars = new char[16][];
+    private int[][] mNext = new int[16][];
+    private int[] mNumNext = new int[16];
+
+    // per state: pattern id ending at this state or NONE
+    private int[] mPattern = new int[16];
+
+    private int mNumStates;
+    private int mNumPatterns;
+
+    StringTrie() {
+        newState();
+    }
+
+    private int newState() {
+        if (mNumStates == mPattern.length) {
+            int size = mNumStates * 2;
+            mChars = Arrays.copyOf(mChars, size);
+            mNext = Arrays.copyOf(mNext, size);
+            mNumNext = Arrays.copyOf(mNumNext, size);
+            mPattern = Arrays.copyOf(mPattern, size);
+        }
+        mChars[mNumStates] = new char[0];
+        mNext[mNumStates] = new int[0];
+        mPattern[mNumStates] = NONE;
+        return mNumStates++;
+    }
+
+    /**
+     * add pattern
+     *
+     * @return id of pattern (0, 1, 2, ..) or id of the same pattern if it was already added
+     */
+    int add(CharSequence pattern) {
+        int state = ROOT;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            int next = goTo(state, c);
+            if (next == NONE) {
+                next = newState();
+                addTransition(state, c, next);
+            }
+            state = next;
+        }
+        if (mPattern[state] == NONE) {
+            mPattern[state] = mNumPatterns++;
+        }
+        return mPattern[state];
+    }
+
+    private void addTransition(int state, char c, int next) {
+        int num = mNumNext[state];
+        if (num == mChars[state].length) {
+            int size = Math.max(2, num * 2);
+            mChars[state] = Arrays.copyOf(mChars[state], size);
+            mNext[state] = Arrays.copyOf(mNext[state], size);
+        }
+        // keep chars sorted for binary search
+        int pos = -(Arrays.binarySearch(mChars[state], 0, num, c) + 1);
+        System.arraycopy(mChars[state], pos, mChars[state], pos + 1, num - pos);
+        System.arraycopy(mNext[state], pos, mNext[state], pos + 1, num - pos);
+        mChars[state][pos] = c;
+        mNext[state][pos] = next;
+        mNumNext[state] = num + 1;
+    }
+
+    /**
+     * @return state after trie edge for c or NONE if there's no edge
+     */
+    int goTo(int state, char c) {
+        int pos = Arrays.binarySearch(mChars[state], 0, mNumNext[state], c);
+        return pos >= 0 ? mNext[state][pos] : NONE;
+    }
+
+    /**
+     * @return id of pattern which ends exactly at this state or NONE
+     */
+    int getPattern(int state) {
+        return mPattern[state];
+    }
+}
@@ -0,0 +1,146 @@
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * writes an iOS Localizable.stringsdict file: a plist with a plural rule for each key. The plist is streamed to a temp
+ * file which then replaces the old file, so it's never built in memory and a failed write leaves the old file alone.
+ *
+ * <pre>
+ * &lt;key&gt;songs&lt;/key&gt;
+ * &lt;dict&gt;
+ *     &lt;key&gt;NSStringLocalizedFormatKey&lt;/key&gt;  &lt;string&gt;%#@value@&lt;/string&gt;
+ *     &lt;key&gt;value&lt;/key&gt;
+ *     &lt;dict&gt;
+ *         &lt;key&gt;NSStringFormatSpecTypeKey&lt;/key&gt;  &lt;string&gt;NSStringPluralRuleType&lt;/string&gt;
+ *         &lt;key&gt;NSStringFormatValueTypeKey&lt;/key&gt; &lt;string&gt;d&lt;/string&gt;
+ *         &lt;key&gt;one&lt;/key&gt;                        &lt;string&gt;%d song&lt;/string&gt;
+ *         &lt;key&gt;other&lt;/key&gt;                      &lt;string&gt;%d songs&lt;/string&gt;
+ * </pre>
+ */
+class StringsDictFile {
+
+    private static final String DOCTYPE = "<!DOCTYPE plist PUBLIC \"-//Apple//DTD PLIST 1.0//EN\" \"http://www.apple.com/DTDs/PropertyList-1.0.dtd\">";
+
+    // plural categories iOS and Android have in common, in the order they're written
+    private static final String[] QUANTITIES = { "zero", "one", "two", "few", "many", "other" };
+
+    // name of the variable in the format key which holds the count
+    private static final String VARIABLE = "value";
+
+    /**
+     * @param pluralMap key -> quantity ("one", "other") -> iOS value; written in map order. Quantities iOS doesn't
+     *                  have are left out
+     * @return # of bytes written
+     */
+    static long write(File file, Map<String, Map<String, String>> pluralMap) throws IOException {
+        TextFile.createParentDirs(file);
+
+        Path path = file.toPath();
+        Path tempPath = TextFile.createTempFile(path);
+        try {
+            OutputStream out = new BufferedOutputStream(Files.newOutputStream(tempPath));
+            try {
+                write(new OutputStreamWriter(out, "UTF-8"), pluralMap);
+            } finally {
+                out.close();
+            }
+
+            long numBytes = Files.size(tempPath);
+            TextFile.replace(tempPath, path);
+            return numBytes;
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    /**
+     * stream plist to out (flushed but not closed)
+     */
+    static void write(Writer out, Map<String, Map<String, String>> pluralMap) throws IOException {
+        try {
+            XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out);
+            writePlist(writer, pluralMap);
+            writer.close();
+            out.flush();
+        } catch (XMLStreamException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    private static void writePlist(XMLStreamWriter writer, Map<String, Map<String, String>> pluralMap) throws XMLStreamException {
+        writer.writeStartDocument("UTF-8", "1.0");
+        writer.writeCharacters("\n");
+        writer.writeDTD(DOCTYPE);
+        writer.writeCharacters("\n");
+        writer.writeStartElement("plist");
+        writer.writeAttribute("version", "1.0");
+        writer.writeCharacters("\n");
+        writer.writeStartElement("dict");
+
+        for (Map.Entry<String, Map<String, String>> entry : pluralMap.entrySet()) {
+            Map<String, String> quantityMap = entry.getValue();
+            writeElement(writer, 1, "key", entry.getKey());
+            startDict(writer, 1);
+            writeElement(writer, 2, "key", "NSStringLocalizedFormatKey");
+            writeElement(writer, 2, "string", "%#@" + VARIABLE + "@");
+            writeElement(writer, 2, "key", VARIABLE);
+            startDict(writer, 2);
+            writeElement(writer, 3, "key", "NSStringFormatSpecTypeKey");
+            writeElement(writer, 3, "string", "NSStringPluralRuleType");
+            writeElement(writer, 3, "key", "NSStringFormatValueTypeKey");
+            writeElement(writer, 3, "string", "d");
+            for (String quantity : QUANTITIES) {
+                String value = quantityMap.get(quantity);
+                if (value != null) {
+                    writeElement(writer, 3, "key", quantity);
+                    writeElement(writer, 3, "string", value);
+                }
+            }
+            endDict(writer, 2);
+            endDict(writer, 1);
+        }
+
+        writer.writeCharacters("\n");
+        writer.writeEndElement();
+        writer.writeCharacters("\n");
+        writer.writeEndElement();
+        writer.writeCharacters("\n");
+        writer.writeEndDocument();
+    }
+
+    private static void writeElement(XMLStreamWriter writer, int depth, String name, String text) throws XMLStreamException {
+        indent(writer, depth);
+        writer.writeStartElement(name);
+        writer.writeCharacters(text);
+        writer.writeEndElement();
+    }
+
+    private static void startDict(XMLStreamWriter writer, int depth) throws XMLStreamException {
+        indent(writer, depth);
+        writer.writeStartElement("dict");
+    }
+
+    private static void endDict(XMLStreamWriter writer, int depth) throws XMLStreamException {
+        indent(writer, depth);
+        writer.writeEndElement();
+    }
+
+    // plists are indented with tabs
+    private static void indent(XMLStreamWriter writer, int depth) throws XMLStreamException {
+        writer.writeCharacters("\n");
+        for (int i = 0; i < depth; i++) {
+            writer.writeCharacters("\t");
+        }
+    }
+}
@@ -0,0 +1,276 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * edits &lt;string&gt; values of an Android strings.xml file as text so everything else in it (comments, formatting,
+ * other resources) is left as it was. Strings which aren't in the file yet are added before &lt;/resources&gt;.
+ */
+class StringsXmlFile {
+
+    private static final String HEADER = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<resources>\n";
+    private static final String END_TAG = "</resources>";
+
+    /**
+     * @param text     file contents or null to create a new file
+     * @param valueMap key -> new value (already escaped for strings.xml)
+     * @return updated file contents
+     */
+    static String update(CharSequence text, Map<String, String> valueMap) {
+        if (text == null) {
+            text = HEADER + END_TAG + "\n";
+        }
+        // strings which still need to be added
+        Map<String, String> addMap = new LinkedHashMap<String, String>(valueMap);
+        // indent of first <string> line; used for added lines
+        String indent = null;
+
+        StringBuilder sb = new StringBuilder(text.length() + 256);
+        int copiedPos = 0;
+        int pos = 0;
+        while (pos < text.length()) {
+            if (startsWith(text, pos, "<!--")) {
+                pos = skipPast(text, "-->", pos + 4);
+                continue;
+            } else if (!startsWith(text, pos, "<string") || pos + 7 >= text.length() || !isTagEnd(text.charAt(pos + 7))) {
+                // not <string> (<string-array>, <item>, ..)
+                pos++;
+                continue;
+            }
+
+            int tagEnd = skipPast(text, ">", pos);
+            if (indent == null) {
+                indent = getIndent(text, pos);
+            }
+            String key = getAttribute(text.subSequence(pos, tagEnd).toString(), "name");
+            String value = key != null ? addMap.remove(key) : null;
+            if (value == null) {
+                pos = tagEnd;
+                continue;
+            }
+
+            // replace contents: <string name="key">..</string> or <string name="key"/>
+            boolean isEmptyTag = text.charAt(tagEnd - 2) == '/';
+            int elementEnd = isEmptyTag ? tagEnd : skipPast(text, "</string>", tagEnd);
+            if (!isEmptyTag && !startsWith(text, elementEnd - "</string>".length(), "</string>")) {
+                // not closed; leave rest of file alone
+                break;
+            }
+            sb.append(text, copiedPos, tagEnd - (isEmptyTag ? 2 : 1));
+            sb.append('>').append(value).append("</string>");
+            copiedPos = elementEnd;
+            pos = copiedPos;
+        }
+
+        // new strings go on their own lines before </resources>
+        int endPos = lastIndexOf(text, END_TAG);
+        if (endPos < 0 || endPos < copiedPos) {
+            // not a resources file; only existing strings are updated
+            sb.append(text, copiedPos, text.length());
+            return sb.toString();
+        }
+        int insertPos = endPos;
+        while (insertPos > copiedPos && (text.charAt(insertPos - 1) == ' ' || text.charAt(insertPos - 1) == '\t')) {
+            insertPos--;
+        }
+        sb.append(text, copiedPos, insertPos);
+        if (!addMap.isEmpty() && sb.length() > 0 && sb.charAt(sb.length() - 1) != '\n') {
+            sb.append('\n');
+        }
+        for (Map.Entry<String, String> entry : addMap.entrySet()) {
+            sb.append(indent != null ? indent : "    ");
+            sb.append("<string name=\"").append(entry.getKey()).append("\">").append(entry.getValue()).append("</string>\n");
+        }
+        sb.append(text, insertPos, text.length());
+        return sb.toString();
+    }
+
+    /**
+     * escape iOS value for strings.xml: apostrophes (which Android requires to be escaped), '&amp;' and '&lt;' which
+     * aren't part of an entity or a markup tag, and a leading '@' or '?' (which Android takes as a resource reference).
+     * Tags which are opened and closed (or self-closing) are kept so styled strings stay styled: Hola &lt;b&gt;Mundo&lt;/b&gt;
+     */
+    static String escape(String value) {
+        BitSet tagSet = findTags(value);
+        StringBuilder sb = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (i == 0 && (c == '@' || c == '?')) {
+                sb.append('\\').append(c);
+            } else if (c == '\\' && i + 1 < value.length()) {
+                // keep escapes as they are: \" \' \n
+                sb.append(c).append(value.charAt(++i));
+            } else if (c == '\'') {
+                sb.append("\\'");
+            } else if (c == '&' && !isEntity(value, i)) {
+                sb.append("&amp;");
+            } else if (c == '<' && tagSet.get(i)) {
+                // attribute quotes are escaped in iOS strings: <font color=\"red\">
+                int end = getTagEnd(value, i);
+                sb.append(value.substring(i, end).replace("\\\"", "\""));
+                i = end - 1;
+            } else if (c == '<') {
+                sb.append("&lt;");
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    // positions of '<' which start a tag with a matching start/end tag (or a self-closing tag); others aren't markup
+    private static BitSet findTags(String value) {
+        BitSet tagSet = new BitSet();
+        // open tags not closed yet: name and position
+        List<String> nameList = new ArrayList<String>();
+        List<Integer> posList = new ArrayList<Integer>();
+        int pos = 0;
+        while ((pos = value.indexOf('<', pos)) >= 0) {
+            int end = getTagEnd(value, pos);
+            if (end < 0) {
+                pos++;
+                continue;
+            }
+            boolean isEndTag = value.charAt(pos + 1) == '/';
+            String name = getTagName(value, isEndTag ? pos + 2 : pos + 1);
+            if (value.charAt(end - 2) == '/') {
+                tagSet.set(pos);
+            } else if (!isEndTag) {
+                nameList.add(name);
+                posList.add(pos);
+            } else if (!nameList.isEmpty() && nameList.get(nameList.size() - 1).equals(name)) {
+                nameList.remove(nameList.size() - 1);
+                tagSet.set(posList.remove(posList.size() - 1));
+                tagSet.set(pos);
+            }
+            pos = end;
+        }
+        return tagSet;
+    }
+
+    // tag at value[pos] (a '<'): <name attr=..>, </name> or <name/>
+    // - returns position after its '>' or -1 if it isn't a tag
+    private static int getTagEnd(String value, int pos) {
+        int namePos = pos + 1 < value.length() && value.charAt(pos + 1) == '/' ? pos + 2 : pos + 1;
+        if (namePos >= value.length() || !Character.isLetter(value.charAt(namePos))) {
+            return -1;
+        }
+        String name = getTagName(value, namePos);
+        int end = namePos + name.length();
+        if (end >= value.length() || (value.charAt(end) != '>' && value.charAt(end) != '/' && !Character.isWhitespace(value.charAt(end)))) {
+            return -1;
+        }
+        for (; end < value.length(); end++) {
+            char c = value.charAt(end);
+            if (c == '>') {
+                return end + 1;
+            } else if (c == '<') {
+                break;
+            }
+        }
+        return -1;
+    }
+
+    private static String getTagName(String value, int pos) {
+        int end = pos;
+        while (end < value.length() && (Character.isLetterOrDigit(value.charAt(end)) || "_-:.".indexOf(value.charAt(end)) >= 0)) {
+            end++;
+        }
+        return value.substring(pos, end);
+    }
+
+    // check for an entity at value[pos] (a '&'): &amp; &#39; &#x27;
+    private static boolean isEntity(String value, int pos) {
+        int end = pos + 1;
+        if (end < value.length() && value.charAt(end) == '#') {
+            end++;
+            boolean isHex = end < value.length() && (value.charAt(end) == 'x' || value.charAt(end) == 'X');
+            if (isHex) {
+                end++;
+            }
+            int start = end;
+            while (end < value.length() && Character.digit(value.charAt(end), isHex ? 16 : 10) >= 0) {
+                end++;
+            }
+            return end > start && end < value.length() && value.charAt(end) == ';';
+        }
+        int start = end;
+        while (end < value.length() && Character.isLetterOrDigit(value.charAt(end))) {
+            end++;
+        }
+        return end > start && end < value.length() && value.charAt(end) == ';';
+    }
+
+    private static boolean isTagEnd(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '>' || c == '/';
+    }
+
+    // leading whitespace of line pos is on
+    private static String getIndent(CharSequence text, int pos) {
+        int start = pos;
+        while (start > 0 && (text.charAt(start - 1) == ' ' || text.charAt(start - 1) == '\t')) {
+            start--;
+        }
+        return start == 0 || text.charAt(start - 1) == '\n' ? text.subSequence(start, pos).toString() : "    ";
+    }
+
+    // value of attribute in start tag: name="value" (or 'value') or null if it's not there
+    private static String getAttribute(String tag, String name) {
+        int pos = 0;
+        while ((pos = tag.indexOf(name, pos)) >= 0) {
+            int eqPos = pos + name.length();
+            boolean isName = Character.isWhitespace(tag.charAt(pos - 1));
+            while (eqPos < tag.length() && Character.isWhitespace(tag.charAt(eqPos))) {
+                eqPos++;
+            }
+            if (isName && eqPos + 1 < tag.length() && tag.charAt(eqPos) == '=') {
+                int quotePos = eqPos + 1;
+                while (quotePos < tag.length() && Character.isWhitespace(tag.charAt(quotePos))) {
+                    quotePos++;
+                }
+                if (quotePos < tag.length()) {
+                    char quote = tag.charAt(quotePos);
+                    int endPos = tag.indexOf(quote, quotePos + 1);
+                    if ((quote == '"' || quote == '\'') && endPos > 0) {
+                        return tag.substring(quotePos + 1, endPos);
+                    }
+                }
+            }
+            pos = eqPos;
+        }
+        return null;
+    }
+
+    private static boolean startsWith(CharSequence text, int pos, String str) {
+        if (pos < 0 || pos + str.length() > text.length()) {
+            return false;
+        }
+        for (int i = 0; i < str.length(); i++) {
+            if (text.charAt(pos + i) != str.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // position after str (searching from pos) or end of text if it's not found
+    private static int skipPast(CharSequence text, String str, int pos) {
+        for (; pos < text.length(); pos++) {
+            if (startsWith(text, pos, str)) {
+                return pos + str.length();
+            }
+        }
+        return text.length();
+    }
+
+    private static int lastIndexOf(CharSequence text, String str) {
+        for (int pos = text.length() - str.length(); pos >= 0; pos--) {
+            if (startsWith(text, pos, str)) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,369 @@
+/**
+ * minimal Swift lexer which finds "..." strings that could be localized. Comments (including nested block comments),
+ * multi-line """ strings, raw #"..."# strings and strings with interpolation \(..) are skipped; strings inside
+ * NSLocalizedString(..), String(localized: ..), print/NSLog/DDLog(..) calls, attributes (@available(..)) and
+ * directives (#selector(..)) are not returned. Strings in a case statement, enum case raw values (case ok = "OK") and
+ * switch case patterns (case "a", "b":) are returned with isConst() set since they have to be literals.
+ * <p>
+ * usage: while (lexer.nextString()) { .. getStart() / getEnd() .. }
+ */
+class SwiftLexer implements StringExtractor {
+
+    static final Factory FACTORY = new Factory() {
+        @Override
+        public StringExtractor create(char[] text, int length) {
+            return new SwiftLexer(text, length);
+        }
+    };
+
+    private final char[] mText;
+    private final int mLength;
+
+    private int mPos;
+
+    // true until something other than whitespace is found in the current statement
+    private boolean mIsStatementStart = true;
+
+    private int mParenDepth;
+
+    // depth of ( which opened NSLocalizedString(..) / print(..) / @attribute(..) call; -1 if not in one
+    private int mSkipParenDepth = -1;
+
+    // set when identifier was NSLocalizedString / print / an attribute and a ( should follow
+    private boolean mIsSkipCall;
+
+    // set after @ or # (attribute or directive name should follow)
+    private boolean mIsAttribute;
+
+    // current statement starts with 'case': enum case raw value or switch case pattern (until its ':')
+    private boolean mIsCaseStatement;
+    private boolean mIsConstStatement;
+
+    // set by skipString()
+    private boolean mIsInterpolated;
+
+    // last string found: position of opening and closing "
+    private int mStart;
+    private int mEnd;
+    private boolean mIsConst;
+
+    SwiftLexer(char[] text, int length) {
+        mText = text;
+        mLength = length;
+    }
+
+    @Override
+    public boolean nextString() {
+        while (mPos < mLength) {
+            char c = mText[mPos];
+
+            if (c == '\n') {
+                // end of statement (unless it continues inside (..))
+                if (mParenDepth == 0) {
+                    endStatement();
+                }
+                mPos++;
+                continue;
+            } else if (c == ' ' || c == '\t' || c == '\r' || c == '\f') {
+                mPos++;
+                continue;
+            }
+
+            boolean isStatementStart = mIsStatementStart;
+            mIsStatementStart = false;
+
+            if (c == '/' && peek(1) == '/') {
+                // line comment
+                while (mPos < mLength && mText[mPos] != '\n') {
+                    mPos++;
+                }
+                mIsStatementStart = isStatementStart;
+                continue;
+            } else if (c == '/' && peek(1) == '*') {
+                skipBlockComment();
+                mIsStatementStart = isStatementStart;
+                continue;
+            } else if (c == '"' && peek(1) == '"' && peek(2) == '"') {
+                // multi-line string
+                int end = indexOf("\"\"\"", mPos + 3);
+                mPos = end < 0 ? mLength : end + 3;
+                continue;
+            } else if (c == '#' && (peek(1) == '"' || peek(1) == '#')) {
+                skipRawString();
+                continue;
+            } else if (c == '"') {
+                int start = mPos;
+                int end = skipString();
+                if (end < 0) {
+                    // unterminated string
+                    continue;
+                } else if (mIsInterpolated || mSkipParenDepth >= 0) {
+                    // can't be replaced with a single key / already localized or in a log statement
+                    continue;
+                }
+                mStart = start;
+                mEnd = end;
+                mIsConst = mIsConstStatement;
+                return true;
+            } else if (isIdentifierStart(c)) {
+                int start = mPos;
+                while (mPos < mLength && isIdentifierPart(mText[mPos])) {
+                    mPos++;
+                }
+                onIdentifier(start, mPos - start, isStatementStart);
+                continue;
+            } else if (c == '@' || c == '#') {
+                // attribute (@objc, @available) or directive (#selector, #warning)
+                mIsAttribute = true;
+                mPos++;
+                continue;
+            }
+
+            onPunctuation(c);
+            mPos++;
+        }
+        return false;
+    }
+
+    private void endStatement() {
+        mIsStatementStart = true;
+        mIsCaseStatement = false;
+        mIsConstStatement = false;
+    }
+
+    private void onIdentifier(int start, int length, boolean isStatementStart) {
+        boolean isAttribute = mIsAttribute;
+        mIsAttribute = false;
+        if (isStatementStart && regionEquals(start, length, "case")) {
+            mIsCaseStatement = true;
+            mIsConstStatement = true;
+        }
+        if (mSkipParenDepth >= 0) {
+            mIsSkipCall = false;
+        } else if (isAttribute) {
+            mIsSkipCall = true;
+        } else if (regionEquals(start, length, "String")) {
+            // String(localized: "key")
+            mIsSkipCall = isFollowedBy("(", "localized");
+        } else {
+            mIsSkipCall = regionStartsWith(start, length, "NSLocalizedString") || regionEquals(start, length, "NSLog")
+                || regionEquals(start, length, "print") || regionEquals(start, length, "debugPrint")
+                || regionStartsWith(start, length, "DDLog");
+        }
+    }
+
+    private void onPunctuation(char c) {
+        if (c == '(') {
+            mParenDepth++;
+            if (mIsSkipCall) {
+                mSkipParenDepth = mParenDepth;
+            }
+        } else if (c == ')') {
+            if (mParenDepth == mSkipParenDepth) {
+                mSkipParenDepth = -1;
+            }
+            mParenDepth--;
+        } else if (c == ';' || c == '{' || c == '}') {
+            endStatement();
+        } else if (c == ':' && (!mIsCaseStatement || mParenDepth == 0)) {
+            // ':' ends a switch case pattern: case "a": x = "b" (but not a label inside it: case .item(name: "a"):)
+            endStatement();
+        }
+        mIsSkipCall = false;
+        mIsAttribute = false;
+    }
+
+    /**
+     * skip "..." string at mPos; mPos is moved past string. Sets mIsInterpolated if string has interpolation:
+     * "count: \(count)"
+     *
+     * @return position of closing quote or -1 if string isn't closed on this line
+     */
+    private int skipString() {
+        mIsInterpolated = false;
+        int pos = mPos + 1;
+        while (pos < mLength) {
+            char c = mText[pos];
+            if (c == '\\' && pos + 1 < mLength && mText[pos + 1] == '(') {
+                mIsInterpolated = true;
+                pos = skipInterpolation(pos + 2);
+                continue;
+            } else if (c == '\\') {
+                // escaped char: \" or \\
+                pos += 2;
+                continue;
+            } else if (c == '"') {
+                mPos = pos + 1;
+                return pos;
+            } else if (c == '\n') {
+                break;
+            }
+            pos++;
+        }
+        mPos = Math.min(pos, mLength);
+        return -1;
+    }
+
+    // skip \( .. ) in a string; pos is after the (. Returns position after matching )
+    private int skipInterpolation(int pos) {
+        int depth = 1;
+        while (pos < mLength && depth > 0) {
+            char c = mText[pos];
+            if (c == '"') {
+                // string inside interpolation
+                pos++;
+                while (pos < mLength && mText[pos] != '"' && mText[pos] != '\n') {
+                    pos += mText[pos] == '\\' ? 2 : 1;
+                }
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '\n') {
+                break;
+            }
+            pos++;
+        }
+        return pos;
+    }
+
+    // #"..."# (any # of #'s on each side)
+    private void skipRawString() {
+        int numHashes = 0;
+        while (mPos < mLength && mText[mPos] == '#') {
+            numHashes++;
+            mPos++;
+        }
+        if (mPos >= mLength || mText[mPos] != '"') {
+            // not a string (ie: #if); treat like a directive
+            mIsAttribute = true;
+            return;
+        }
+        boolean isMultiLine = peek(1) == '"' && peek(2) == '"';
+        mPos += isMultiLine ? 3 : 1;
+        while (mPos < mLength) {
+            if (mText[mPos] == '"' && (!isMultiLine || (peek(1) == '"' && peek(2) == '"'))) {
+                int end = mPos + (isMultiLine ? 3 : 1);
+                int hashEnd = end;
+                while (hashEnd < mLength && hashEnd - end < numHashes && mText[hashEnd] == '#') {
+                    hashEnd++;
+                }
+                if (hashEnd - end == numHashes) {
+                    mPos = hashEnd;
+                    return;
+                }
+            }
+            mPos++;
+        }
+    }
+
+    // block comments can be nested in Swift: /* /* */ */
+    private void skipBlockComment() {
+        int depth = 0;
+        while (mPos < mLength) {
+            if (mText[mPos] == '/' && peek(1) == '*') {
+                depth++;
+                mPos += 2;
+            } else if (mText[mPos] == '*' && peek(1) == '/') {
+                depth--;
+                mPos += 2;
+                if (depth == 0) {
+                    return;
+                }
+            } else {
+                mPos++;
+            }
+        }
+    }
+
+    // check if text after mPos is: <whitespace> open <whitespace> word
+    private boolean isFollowedBy(String open, String word) {
+        int pos = skipSpaces(mPos);
+        if (!regionStartsWith(pos, mLength - pos, open)) {
+            return false;
+        }
+        pos = skipSpaces(pos + open.length());
+        return regionStartsWith(pos, mLength - pos, word);
+    }
+
+    private int skipSpaces(int pos) {
+        while (pos < mLength && (mText[pos] == ' ' || mText[pos] == '\t')) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private char peek(int offset) {
+        int pos = mPos + offset;
+        return pos < mLength ? mText[pos] : 0;
+    }
+
+    private int indexOf(String str, int fromPos) {
+        for (int pos = fromPos; pos + str.length() <= mLength; pos++) {
+            if (regionStartsWith(pos, str.length(), str)) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    private boolean regionEquals(int start, int length, String str) {
+        return length == str.length() && regionStartsWith(start, length, str);
+    }
+
+    private boolean regionStartsWith(int start, int length, String str) {
+        if (length < str.length()) {
+            return false;
+        }
+        for (int i = 0; i < str.length(); i++) {
+            if (mText[start + i] != str.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c > 0x7f;
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return isIdentifierStart(c) || (c >= '0' && c <= '9');
+    }
+
+    /**
+     * @return position of opening quote of last string found
+     */
+    @Override
+    public int getStart() {
+        return mStart;
+    }
+
+    @Override
+    public int getValueStart() {
+        return mStart + 1;
+    }
+
+    @Override
+    public int getEnd() {
+        return mEnd;
+    }
+
+    /**
+     * @return true if last string found is an enum case raw value
+     */
+    @Override
+    public boolean isConst() {
+        return mIsConst;
+    }
+
+    // NSLocalizedString("key", comment: "value")
+    @Override
+    public void appendLocalized(StringBuilder sb, String key, char[] text, int valueStart, int valueEnd) {
+        sb.append("NSLocalizedString(\"");
+        sb.append(key);
+        sb.append("\", comment: \"");
+        sb.append(text, valueStart, valueEnd - valueStart);
+        sb.append("\")");
+    }
+}
@@ -0,0 +1,190 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * contents of a text file read through a FileChannel. Files are UTF-8 unless they start with a UTF-16 byte order mark;
+ * a file which isn't valid in its charset can't be read (so it's never rewritten with replacement chars).
+ * <p>
+ * write() saves to a temp file and moves it into place so an interrupted run never leaves a partly written file.
+ */
+class TextFile {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // files this size or larger are memory-mapped instead of read into a buffer
+    private static final long MAP_SIZE = 1024 * 1024;
+
+    // suffix of temp file names
+    private static final Random mTempRandom = new Random();
+
+    private final char[] mText;
+    private final int mLength;
+    private final Charset mCharset;
+    private final long mNumBytes;
+
+    private TextFile(char[] text, int length, Charset charset, long numBytes) {
+        mText = text;
+        mLength = length;
+        mCharset = charset;
+        mNumBytes = numBytes;
+    }
+
+    static TextFile read(File file) throws IOException {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            long size = channel.size();
+            ByteBuffer bytes;
+            if (size >= MAP_SIZE) {
+                bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                bytes = ByteBuffer.allocate((int) size);
+                while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+                }
+                bytes.flip();
+            }
+
+            Charset charset = getCharset(bytes);
+            CharsetDecoder decoder = charset.newDecoder();
+            decoder.onMalformedInput(CodingErrorAction.REPORT);
+            decoder.onUnmappableCharacter(CodingErrorAction.REPORT);
+            CharBuffer chars = decoder.decode(bytes);
+            return new TextFile(chars.array(), chars.limit(), charset, size);
+        } finally {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+
+    // check for UTF-16 byte order mark; the BOM is kept as the first char so it's written back out
+    private static Charset getCharset(ByteBuffer bytes) {
+        if (bytes.remaining() >= 2) {
+            int b0 = bytes.get(0) & 0xff;
+            int b1 = bytes.get(1) & 0xff;
+            if (b0 == 0xfe && b1 == 0xff) {
+                return Charset.forName("UTF-16BE");
+            } else if (b0 == 0xff && b1 == 0xfe) {
+                return Charset.forName("UTF-16LE");
+            }
+        }
+        return UTF_8;
+    }
+
+    /**
+     * replace file with text; file is written to a temp file in the same directory and then moved into place
+     *
+     * @return # of bytes written
+     */
+    static long write(File file, CharSequence text, Charset charset) throws IOException {
+        Path path = file.toPath();
+        Path tempPath = createTempFile(path);
+        try {
+            ByteBuffer bytes = charset.newEncoder().encode(CharBuffer.wrap(text));
+            long numBytes = bytes.remaining();
+            FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            try {
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            } finally {
+                channel.close();
+            }
+
+            replace(tempPath, path);
+            return numBytes;
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    /**
+     * create parent directory of file (and any missing directories above it) if it doesn't exist
+     */
+    static void createParentDirs(File file) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("unable to create directory: " + dir);
+        }
+    }
+
+    /**
+     * create an empty temp file in the same directory as path (so it can be moved into place) with default permissions
+     * for a new file; Files.createTempFile() would make it readable by owner only
+     */
+    static Path createTempFile(Path path) throws IOException {
+        Path dir = path.toAbsolutePath().getParent();
+        while (true) {
+            Path tempPath = dir.resolve("." + path.getFileName() + "." + mTempRandom.nextInt(Integer.MAX_VALUE) + ".tmp");
+            try {
+                return Files.createFile(tempPath);
+            } catch (FileAlreadyExistsException e) {
+                // try another name
+            }
+        }
+    }
+
+    /**
+     * move temp file (from createTempFile()) into place, keeping permissions of the file being replaced
+     */
+    static void replace(Path tempPath, Path path) throws IOException {
+        if (Files.exists(path)) {
+            try {
+                Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(path);
+                Files.setPosixFilePermissions(tempPath, permissions);
+            } catch (UnsupportedOperationException e) {
+                // not a POSIX file system
+            }
+        }
+
+        try {
+            Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    static long write(File file, CharSequence text) throws IOException {
+        return write(file, text, UTF_8);
+    }
+
+    /**
+     * @return file contents; only the first getLength() chars are valid
+     */
+    char[] getText() {
+        return mText;
+    }
+
+    int getLength() {
+        return mLength;
+    }
+
+    Charset getCharset() {
+        return mCharset;
+    }
+
+    /**
+     * @return size of file in bytes
+     */
+    long getNumBytes() {
+        return mNumBytes;
+    }
+}
@@ -0,0 +1,244 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * line diff of 2 versions of a file in unified format (diff -u), using the linear space version of Myers' O(ND)
+ * algorithm so memory used only depends on the # of lines.
+ */
+class UnifiedDiff {
+
+    // # of unchanged lines shown around each change
+    private static final int CONTEXT = 3;
+
+    private static final String NO_NEWLINE = "\\ No newline at end of file";
+
+    // edit script: a line which is in both versions, only in the old one or only in the new one
+    private static final char SAME = ' ';
+    private static final char DELETE = '-';
+    private static final char INSERT = '+';
+
+    /**
+     * @param path    file name printed in the header
+     * @param oldText file contents before or null if file doesn't exist yet
+     * @return diff or null if nothing changed
+     */
+    static String diff(String path, CharSequence oldText, CharSequence newText) {
+        String[] oldLines = oldText != null ? splitLines(oldText) : new String[0];
+        String[] newLines = splitLines(newText);
+
+        // compare line ids instead of strings
+        Map<String, Integer> idMap = new HashMap<String, Integer>();
+        int[] a = toIds(oldLines, idMap);
+        int[] b = toIds(newLines, idMap);
+
+        boolean[] deleted = new boolean[a.length];
+        boolean[] inserted = new boolean[b.length];
+        int[] forward = new int[a.length + b.length + 4];
+        int[] backward = new int[a.length + b.length + 4];
+        diffRange(a, 0, a.length, b, 0, b.length, deleted, inserted, forward, backward);
+
+        // edit script for whole file: type of each step and the line it's for (old line for SAME/DELETE, new for INSERT)
+        char[] types = new char[a.length + b.length];
+        int[] lines = new int[a.length + b.length];
+        int numSteps = 0;
+        boolean isChanged = false;
+        int i = 0;
+        int j = 0;
+        while (i < a.length || j < b.length) {
+            if (i < a.length && deleted[i]) {
+                types[numSteps] = DELETE;
+                lines[numSteps++] = i++;
+                isChanged = true;
+            } else if (j < b.length && inserted[j]) {
+                types[numSteps] = INSERT;
+                lines[numSteps++] = j++;
+                isChanged = true;
+            } else {
+                types[numSteps] = SAME;
+                lines[numSteps++] = i++;
+                j++;
+            }
+        }
+        if (!isChanged && oldText != null) {
+            return null;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("--- ").append(oldText != null ? path : "/dev/null").append('\n');
+        sb.append("+++ ").append(path).append('\n');
+        appendHunks(sb, types, lines, numSteps, oldLines, newLines);
+        return sb.toString();
+    }
+
+    /**
+     * mark lines of a[aLo, aHi) which are deleted and lines of b[bLo, bHi) which are inserted. The path of the shortest
+     * edit script is followed from both ends at once (furthest x reached on each diagonal k = x - y after d changes)
+     * until they meet; the range is then split at the "middle snake" where they met and each half is done the same way
+     *
+     * @param forward  furthest x on each diagonal going forward; shared by all calls (size >= a.length + b.length + 4)
+     * @param backward same going backward from the end
+     */
+    private static void diffRange(int[] a, int aLo, int aHi, int[] b, int bLo, int bHi, boolean[] deleted, boolean[] inserted,
+                                  int[] forward, int[] backward) {
+        // skip lines which are the same at the start and end
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+            aLo++;
+            bLo++;
+        }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+            aHi--;
+            bHi--;
+        }
+        if (aLo == aHi) {
+            Arrays.fill(inserted, bLo, bHi, true);
+            return;
+        } else if (bLo == bHi) {
+            Arrays.fill(deleted, aLo, aHi, true);
+            return;
+        }
+
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        // diagonal k in one direction is delta - k in the other
+        int delta = n - m;
+        boolean isOdd = (delta & 1) != 0;
+        // forward[offset + k] = x on diagonal k
+        int offset = (n + m + 1) / 2 + 1;
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        for (int d = 0; d <= (n + m + 1) / 2; d++) {
+            for (int k = -d; k <= d; k += 2) {
+                // step down (insert) from diagonal k + 1 or right (delete) from k - 1; (xs, ys) is where step starts
+                boolean isDown = k == -d || (k != d && forward[offset + k - 1] < forward[offset + k + 1]);
+                int xs = isDown ? forward[offset + k + 1] : forward[offset + k - 1];
+                int ys = xs - (isDown ? k + 1 : k - 1);
+                int x = isDown ? xs : xs + 1;
+                int y = x - k;
+                while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                    x++;
+                    y++;
+                }
+                forward[offset + k] = x;
+                int backK = delta - k;
+                if (isOdd && backK >= -(d - 1) && backK <= d - 1 && x + backward[offset + backK] >= n) {
+                    // [start, step) + step + snake + [snake end, end)
+                    diffRange(a, aLo, aLo + xs, b, bLo, bLo + ys, deleted, inserted, forward, backward);
+                    if (isDown) {
+                        inserted[bLo + ys] = true;
+                    } else {
+                        deleted[aLo + xs] = true;
+                    }
+                    diffRange(a, aLo + x, aHi, b, bLo + y, bHi, deleted, inserted, forward, backward);
+                    return;
+                }
+            }
+
+            // same thing going backward; x and y are # of lines from the end
+            for (int k = -d; k <= d; k += 2) {
+                boolean isDown = k == -d || (k != d && backward[offset + k - 1] < backward[offset + k + 1]);
+                int xs = isDown ? backward[offset + k + 1] : backward[offset + k - 1];
+                int ys = xs - (isDown ? k + 1 : k - 1);
+                int x = isDown ? xs : xs + 1;
+                int y = x - k;
+                while (x < n && y < m && a[aHi - 1 - x] == b[bHi - 1 - y]) {
+                    x++;
+                    y++;
+                }
+                backward[offset + k] = x;
+                int forwardK = delta - k;
+                if (!isOdd && forwardK >= -d && forwardK <= d && x + forward[offset + forwardK] >= n) {
+                    // [start, snake) + snake + step + [step end, end)
+                    diffRange(a, aLo, aHi - x, b, bLo, bHi - y, deleted, inserted, forward, backward);
+                    if (isDown) {
+                        inserted[bHi - 1 - ys] = true;
+                    } else {
+                        deleted[aHi - 1 - xs] = true;
+                    }
+                    diffRange(a, aHi - xs, aHi, b, bHi - ys, bHi, deleted, inserted, forward, backward);
+                    return;
+                }
+            }
+        }
+    }
+
+    // group changes into hunks with CONTEXT lines around them; hunks closer than 2 * CONTEXT are joined
+    private static void appendHunks(StringBuilder sb, char[] types, int[] lines, int numSteps, String[] oldLines, String[] newLines) {
+        // line # in old and new file at each step (0 based)
+        int[] oldPos = new int[numSteps + 1];
+        int[] newPos = new int[numSteps + 1];
+        for (int i = 0; i < numSteps; i++) {
+            oldPos[i + 1] = oldPos[i] + (types[i] != INSERT ? 1 : 0);
+            newPos[i + 1] = newPos[i] + (types[i] != DELETE ? 1 : 0);
+        }
+
+        int step = 0;
+        while (step < numSteps) {
+            if (types[step] == SAME) {
+                step++;
+                continue;
+            }
+            int hunkStart = Math.max(0, step - CONTEXT);
+            // find last change which is close enough to be in this hunk
+            int lastChange = step;
+            for (int i = step + 1; i < numSteps && i <= lastChange + 2 * CONTEXT; i++) {
+                if (types[i] != SAME) {
+                    lastChange = i;
+                }
+            }
+            int hunkEnd = Math.min(numSteps, lastChange + 1 + CONTEXT);
+
+            int oldCount = oldPos[hunkEnd] - oldPos[hunkStart];
+            int newCount = newPos[hunkEnd] - newPos[hunkStart];
+            sb.append("@@ -").append(formatRange(oldPos[hunkStart], oldCount));
+            sb.append(" +").append(formatRange(newPos[hunkStart], newCount)).append(" @@\n");
+            for (int i = hunkStart; i < hunkEnd; i++) {
+                String line = types[i] == INSERT ? newLines[lines[i]] : oldLines[lines[i]];
+                sb.append(types[i]).append(line);
+                if (!line.endsWith("\n")) {
+                    sb.append('\n').append(NO_NEWLINE).append('\n');
+                }
+            }
+            step = hunkEnd;
+        }
+    }
+
+    // start,count (1 based); an empty range starts at the line before it
+    private static String formatRange(int start, int count) {
+        if (count == 0) {
+            return start + ",0";
+        }
+        return count == 1 ? String.valueOf(start + 1) : (start + 1) + "," + count;
+    }
+
+    // lines including their '\n' so a missing newline at the end counts as a change
+    private static String[] splitLines(CharSequence text) {
+        List<String> lineList = new ArrayList<String>();
+        int lineStart = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                lineList.add(text.subSequence(lineStart, i + 1).toString());
+                lineStart = i + 1;
+            }
+        }
+        if (lineStart < text.length()) {
+            lineList.add(text.subSequence(lineStart, text.length()).toString());
+        }
+        return lineList.toArray(new String[lineList.size()]);
+    }
+
+    private static int[] toIds(String[] lines, Map<String, Integer> idMap) {
+        int[] ids = new int[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            Integer id = idMap.get(lines[i]);
+            if (id == null) {
+                id = idMap.size();
+                idMap.put(lines[i], id);
+            }
+            ids[i] = id;
+        }
+        return ids;
+    }
+}